@@ -0,0 +1,270 @@
+// 10.15.2026
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a full crawl-and-scrape of a {@link FixtureServer} site, assembled the same way as {@link Main} runs it, and
+ * reports the pages scraped per second, the download latency of the pages (p50, p99 and max) and the peak heap used.
+ * The urls and data are kept in {@link InMemoryCollection}s unless a MongoDB uri is given, in which case a database
+ * of its own is created for the run and dropped after it. Downloaded pages are kept in memory with their handles, not
+ * in a page store, and aren't archived.
+ * <p>
+ * With more than one node, that many crawlers and scrapers are run side by side in the same process, each with its
+ * own fetch engine, write buffer and scraper urls, sharing the crawler's urls through {@link UrlLeases} as the nodes
+ * of a distributed crawl would. Every page should still be requested only once.
+ * <p>
+ * Options, each as <code>--name=value</code>:
+ * <pre>
+ * --pages              number of pages on the site (default 2000)
+ * --fan-out            number of links from each page to pages further down (default 8)
+ * --latency-ms         time the server holds back each response (default 20)
+ * --page-bytes         rough size of each page (default 30000)
+ * --hosts              number of hosts the site is spread over (default 8)
+ * --downloads          maximum downloads at once (default 16)
+ * --scraper-threads    number of scraper threads (default: the number of processors)
+ * --min-host-interval-ms  minimum politeness delay per host (default 0)
+ * --nodes              number of nodes sharing the crawl (default 1)
+ * --mongo              uri of a MongoDB server to use instead of the in-memory stand-in
+ * </pre>
+ * Run it with <code>java -cp target/benchmarks.jar EndToEndBenchmark --pages=5000</code> after
+ * <code>mvn -Pbenchmarks package</code>.
+ */
+public class EndToEndBenchmark {
+    private static final long HEAP_SAMPLE_INTERVAL_MS = 10;
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+
+    /**
+     * Records how long every download takes, around the fetcher that makes it.
+     */
+    private static final class TimingFetcher implements Fetcher {
+        private final Fetcher fetcher;
+        private final List<Long> latenciesNanos = Collections.synchronizedList(new ArrayList<>());
+
+        private TimingFetcher(Fetcher fetcher) {
+            this.fetcher = fetcher;
+        }
+
+        @Override
+        public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return fetcher.fetch(url, requestHeaders);
+            } finally {
+                latenciesNanos.add(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void close() {
+            fetcher.close();
+        }
+
+        private long[] sortedLatencies() {
+            long[] sorted;
+            synchronized (latenciesNanos) {
+                sorted = latenciesNanos.stream().mapToLong(Long::longValue).toArray();
+            }
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.out.println("Options are given as --name=value; not: " + arg);
+                return;
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        final int NUM_PAGES = Integer.parseInt(options.getOrDefault("pages", "2000"));
+        final int FAN_OUT = Integer.parseInt(options.getOrDefault("fan-out", "8"));
+        final long LATENCY_MS = Long.parseLong(options.getOrDefault("latency-ms", "20"));
+        final int PAGE_BYTES = Integer.parseInt(options.getOrDefault("page-bytes", "30000"));
+        final int NUM_HOSTS = Integer.parseInt(options.getOrDefault("hosts", "8"));
+        final int MAX_CONCURRENT_DOWNLOADS = Integer.parseInt(options.getOrDefault("downloads", "16"));
+        final int NUM_SCRAPER_THREADS = Integer.parseInt(options.getOrDefault("scraper-threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        final long MIN_HOST_DOWNLOAD_INTERVAL_MS = Long.parseLong(options.getOrDefault("min-host-interval-ms", "0"));
+        final String MONGO_URI = options.get("mongo");
+        final int NUM_NODES = Integer.parseInt(options.getOrDefault("nodes", "1"));
+
+        MongoClient mongoClient = null;
+        MongoDatabase db = null;
+        MongoCollection<org.bson.Document> dataCollection, occurrencesCollection;
+        MongoCollection<org.bson.Document> crawlerUrlsCollection, nodesCollection;
+        List<MongoCollection<org.bson.Document>> scraperUrlsCollections = new ArrayList<>();
+        String dbName = "e2e-benchmark-" + System.currentTimeMillis();
+        if (MONGO_URI != null) {
+            mongoClient = MongoClients.create(MONGO_URI);
+            db = mongoClient.getDatabase(dbName);
+            dataCollection = db.getCollection("scraperData");
+            occurrencesCollection = db.getCollection("scraperOccurrences");
+            crawlerUrlsCollection = db.getCollection("crawlerUrls");
+            nodesCollection = db.getCollection("crawlerNodes");
+            for (int i = 0; i < NUM_NODES; i++) {
+                scraperUrlsCollections.add(db.getCollection("scraperUrls-" + i));
+            }
+        } else {
+            dataCollection = InMemoryCollection.create(dbName, "scraperData");
+            occurrencesCollection = InMemoryCollection.create(dbName, "scraperOccurrences");
+            crawlerUrlsCollection = InMemoryCollection.create(dbName, "crawlerUrls");
+            nodesCollection = InMemoryCollection.create(dbName, "crawlerNodes");
+            for (int i = 0; i < NUM_NODES; i++) {
+                scraperUrlsCollections.add(InMemoryCollection.create(dbName, "scraperUrls-" + i));
+            }
+        }
+        dataCollection.createIndex(Indexes.ascending("value", "type"), new IndexOptions().unique(true));
+
+        System.out.println("Serving " + NUM_PAGES + " pages of ~" + PAGE_BYTES / 1024 + " KB (fan-out " + FAN_OUT + ", "
+                + LATENCY_MS + " ms latency) over " + NUM_HOSTS + " hosts; " + MAX_CONCURRENT_DOWNLOADS
+                + " downloads at once, " + NUM_SCRAPER_THREADS + " scraper threads" + (NUM_NODES > 1 ? " per node, "
+                + NUM_NODES + " nodes, " : ", ")
+                + (MONGO_URI != null ? "MongoDB at " + MONGO_URI : "in-memory collections") + ".");
+
+        try (FixtureServer site = new FixtureServer(NUM_PAGES, FAN_OUT, LATENCY_MS, PAGE_BYTES, NUM_HOSTS)) {
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            System.gc();
+            long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+            AtomicLong peakHeap = new AtomicLong(baselineHeap);
+            Thread heapSampler = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        Thread.sleep(HEAP_SAMPLE_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "heap-sampler");
+            heapSampler.setDaemon(true);
+            heapSampler.start();
+
+            long start = System.nanoTime();
+            TimingFetcher fetcher = new TimingFetcher(new HttpClientFetcher());
+            List<Node> nodes = new ArrayList<>();
+            for (int i = 0; i < NUM_NODES; i++) {
+                nodes.add(new Node("node-" + i, NUM_NODES > 1 ? nodesCollection : null, crawlerUrlsCollection,
+                        scraperUrlsCollections.get(i), dataCollection, occurrencesCollection, fetcher, site,
+                        MAX_CONCURRENT_DOWNLOADS, NUM_SCRAPER_THREADS, MIN_HOST_DOWNLOAD_INTERVAL_MS));
+            }
+            nodes.forEach(node -> node.pipeline.start());
+            for (Node node : nodes) {
+                while (!node.pipeline.awaitFinished(PROGRESS_INTERVAL_MS)) {
+                    int scraped = nodes.stream().mapToInt(n -> n.pipeline.getNumPagesScraped()).sum();
+                    int toDownload = nodes.stream().mapToInt(n -> n.crawler.getNumUrlsLeftToVisit()).sum();
+                    int toScrape = nodes.stream().mapToInt(n -> n.scraper.getNumUrlsLeftToVisit()).sum();
+                    System.out.println("///    " + scraped + " pages scraped, " + toDownload + " left to download, "
+                            + toScrape + " left to scrape.");
+                }
+            }
+            nodes.forEach(Node::close);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            heapSampler.interrupt();
+
+            long[] latencies = fetcher.sortedLatencies();
+            int numPagesScraped = nodes.stream().mapToInt(node -> node.pipeline.getNumPagesScraped()).sum();
+            System.out.println("-".repeat(75));
+            System.out.printf("Scraped %d of %d pages (%d requests, %d MB served) in %.1f s: %.1f pages/s%n",
+                    numPagesScraped, NUM_PAGES, site.getNumRequests(), site.getNumBytesServed() / (1024 * 1024),
+                    seconds, numPagesScraped / seconds);
+            System.out.printf("Page download latency: p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                    (latencies.length > 0 ? latencies[latencies.length - 1] : 0) / 1e6);
+            System.out.printf("Peak heap used: %d MB (%d MB before the run)%n", peakHeap.get() / (1024 * 1024),
+                    baselineHeap / (1024 * 1024));
+            System.out.printf("Values stored: %d, in %d db round trips; url changes: %d, in %d bulk writes%n",
+                    nodes.stream().mapToLong(node -> node.scraper.getNumDataValuesWritten()).sum(),
+                    nodes.stream().mapToLong(node -> node.scraper.getNumDataWriteRoundTrips()).sum(),
+                    nodes.stream().mapToLong(node -> node.writeBuffer.getNumChangesWritten()).sum(),
+                    nodes.stream().mapToLong(node -> node.writeBuffer.getNumFlushes()).sum());
+            if (NUM_NODES > 1) {
+                System.out.println("Pages scraped per node: " + nodes.stream()
+                        .map(node -> node.name + " " + node.pipeline.getNumPagesScraped()).toList());
+            }
+        } finally {
+            if (db != null) {
+                db.drop();
+            }
+            if (mongoClient != null) {
+                mongoClient.close();
+            }
+        }
+    }
+
+    /**
+     * A crawler and scraper assembled as one process would run them. Given the nodes collection, it's one node of a
+     * distributed crawl, leasing the urls it downloads from the shared crawler urls.
+     */
+    private static final class Node {
+        private static final long HEARTBEAT_INTERVAL_MS = 250;
+        private static final long NODE_TIMEOUT_MS = 2000;
+
+        private final String name;
+        private final WriteBehindBuffer writeBuffer = new WriteBehindBuffer();
+        private final FetchEngine fetchEngine;
+        private final NodeRegistry registry;  // null if the crawl isn't distributed
+        private final UrlLeases leases;
+        private final Crawler crawler;
+        private final Scraper scraper;
+        private final CrawlPipeline pipeline;
+
+        private Node(String name, MongoCollection<org.bson.Document> nodesCollection,
+                     MongoCollection<org.bson.Document> crawlerUrlsCollection,
+                     MongoCollection<org.bson.Document> scraperUrlsCollection,
+                     MongoCollection<org.bson.Document> dataCollection,
+                     MongoCollection<org.bson.Document> occurrencesCollection, Fetcher fetcher, FixtureServer site,
+                     int maxConcurrentDownloads, int numScraperThreads, long minHostDownloadIntervalMs) {
+            this.name = name;
+            this.fetchEngine = new FetchEngine(maxConcurrentDownloads, fetcher, null, null);
+            this.registry = nodesCollection != null
+                    ? new NodeRegistry(nodesCollection, name, HEARTBEAT_INTERVAL_MS, NODE_TIMEOUT_MS) : null;
+            this.leases = registry != null ? new UrlLeases(crawlerUrlsCollection, registry) : null;
+            this.crawler = new Crawler.Builder(site.getRootUrl(), crawlerUrlsCollection)
+                    .fetchEngine(fetchEngine)
+                    .hostScheduler(new HostScheduler(minHostDownloadIntervalMs))
+                    .writeBuffer(writeBuffer)
+                    .leases(leases)
+                    .canonicalizer(new UrlCanonicalizer(site.getRootUrl()))
+                    .scorer(new WeightedUrlScorer())
+                    .build();
+            this.scraper = new Scraper.Builder(site.getDomain(), dataCollection, scraperUrlsCollection)
+                    .occurrencesCollection(occurrencesCollection)
+                    .writeBuffer(writeBuffer)
+                    .build();
+            this.pipeline = new CrawlPipeline(crawler, scraper, numScraperThreads, false);
+        }
+
+        private void close() {
+            pipeline.close();
+            fetchEngine.close();
+            writeBuffer.close();
+            if (leases != null) {
+                leases.close();
+                registry.close();
+            }
+        }
+    }
+
+    /**
+     * Get the value below which the given fraction of the (sorted) values fall, by the nearest-rank method.
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,205 @@
+// 10.15.2026
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process web server serving a synthetic site, so that the crawler and scraper can be run end to end without
+ * touching a real one. The site is a tree of numbered pages, <code>/page/0</code> to <code>/page/(numPages - 1)</code>:
+ * page <i>n</i> links to pages <i>n * fanOut + 1</i> to <i>n * fanOut + fanOut</i> (those that exist), to the site's
+ * root, and to a few external sites, and is padded with text holding the kinds of values the scraper extracts (dates,
+ * addresses, course codes, emails, phone numbers and images) up to roughly the page weight asked for. The pages are
+ * generated from their number alone, so every run serves the same site.
+ * <p>
+ * The site can be spread over several hosts, one per loopback address (<code>127.0.0.1</code>, <code>127.0.0.2</code>,
+ * ...), so that the crawler's per-host politeness doesn't serialize every download. Page <i>n</i> is served by host
+ * <i>n % numHosts</i>; every host serves every page, so the links are all valid. Addresses other than
+ * <code>127.0.0.1</code> are only routed to the loopback interface on some systems (Linux does by default). Every
+ * response is held back by the latency asked for before it's sent.
+ */
+public class FixtureServer implements AutoCloseable {
+    private static final String[] MONTHS = {"January", "February", "March", "April", "May", "June", "July", "August",
+            "September", "October", "November", "December"};
+    private static final String[] STREETS = {"Main Street", "Broadway", "Park Avenue", "Ocean Parkway", "Elm Street"};
+    private static final String[] CITIES = {"Brooklyn", "New York", "Valhalla", "Middletown", "Queens"};
+    private static final String[] WORDS = ("the of and a to in is you that it he was for on are as with his they at "
+            + "be this have from or one had by word but not what all were we when your can said there use an "
+            + "each which she do how their if will up other about out many then them these so some her would make "
+            + "like him into time")
+            .split(" ");
+
+    private final int numPages;
+    private final int fanOut;
+    private final long latencyMs;
+    private final int pageBytes;
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong numRequests = new AtomicLong();
+    private final AtomicLong numBytesServed = new AtomicLong();
+
+    /**
+     * Start serving the site.
+     *
+     * @param numPages  the number of pages on the site
+     * @param fanOut    the number of pages each page links to, further down the tree
+     * @param latencyMs the time each response is held back before it's sent
+     * @param pageBytes the rough size of each page
+     * @param numHosts  the number of hosts to spread the site over, each on its own loopback address
+     * @throws IOException if a host's address can't be listened on
+     */
+    public FixtureServer(int numPages, int fanOut, long latencyMs, int pageBytes, int numHosts) throws IOException {
+        if (numHosts < 1 || numHosts > 254) {
+            throw new IllegalArgumentException("numHosts must be between 1 and 254, was " + numHosts);
+        }
+        this.numPages = numPages;
+        this.fanOut = fanOut;
+        this.latencyMs = latencyMs;
+        this.pageBytes = pageBytes;
+        int port = 0;
+        for (int i = 0; i < numHosts; i++) {
+            // Every host is listened on at the same port, so an url only differs by its host
+            HttpServer server = HttpServer.create(new InetSocketAddress(
+                    InetAddress.getByAddress(new byte[]{127, 0, 0, (byte) (i + 1)}), port), 0);
+            port = server.getAddress().getPort();
+            server.setExecutor(executor);
+            server.createContext("/", this::handle);
+            server.start();
+            servers.add(server);
+        }
+    }
+
+    /**
+     * Get the domain that the site's hosts are all in, as the scraper tells internal urls apart by
+     *
+     * @return the site's domain
+     */
+    public String getDomain() {
+        return "127.0.0";
+    }
+
+    /**
+     * Get the url of the site's first page, to start crawling from
+     *
+     * @return the url of page 0
+     */
+    public String getRootUrl() {
+        return urlOf(0);
+    }
+
+    /**
+     * Get the number of requests answered so far
+     *
+     * @return the number of requests
+     */
+    public long getNumRequests() {
+        return numRequests.get();
+    }
+
+    /**
+     * Get the number of bytes of pages served so far
+     *
+     * @return the number of bytes served
+     */
+    public long getNumBytesServed() {
+        return numBytesServed.get();
+    }
+
+    private String urlOf(int page) {
+        InetSocketAddress address = servers.get(page % servers.size()).getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/page/" + page;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            numRequests.incrementAndGet();
+            if (latencyMs > 0) {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            String path = exchange.getRequestURI().getPath();
+            int page = -1;
+            if (path.startsWith("/page/")) {
+                try {
+                    page = Integer.parseInt(path.substring("/page/".length()));
+                } catch (NumberFormatException e) {
+                    // Not a page
+                }
+            }
+            if (page < 0 || page >= numPages) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body = render(page).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            numBytesServed.addAndGet(body.length);
+        }
+    }
+
+    /**
+     * Generate a page from its number alone.
+     */
+    private String render(int page) {
+        Random random = new Random(page);
+        StringBuilder html = new StringBuilder(pageBytes + 1024);
+        html.append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Page ").append(page)
+                .append("</title></head><body><nav><a href=\"").append(urlOf(0)).append("\">Home</a></nav><main>");
+        html.append("<h1>Page ").append(page).append("</h1><ul>");
+        for (int child = page * fanOut + 1; child <= page * fanOut + fanOut && child < numPages; child++) {
+            html.append("<li><a href=\"").append(urlOf(child)).append("#top\">Page ").append(child).append("</a></li>");
+        }
+        html.append("</ul>");
+        html.append("<p><a href=\"https://www.example.com/").append(page % 10).append("\">An external site</a> ")
+                .append("<a href=\"mailto:office").append(page % 7).append("@example.edu\">Email us</a> ")
+                .append("<a href=\"tel:+1-212-555-").append(String.format("%04d", page % 10000))
+                .append("\">Call us</a>")
+                .append("</p><img src=\"/images/").append(page % 13).append(".png\" alt=\"\">");
+        while (html.length() < pageBytes) {
+            html.append("<p>");
+            for (int i = 0; i < 60; i++) {
+                html.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            switch (random.nextInt(4)) {
+                case 0 -> html.append("Held on ").append(MONTHS[random.nextInt(12)]).append(' ')
+                        .append(1 + random.nextInt(28)).append(", ").append(2000 + random.nextInt(25)).append(". ");
+                case 1 -> html.append("Visit us at ").append(1 + random.nextInt(999)).append(' ')
+                        .append(STREETS[random.nextInt(STREETS.length)]).append("<br>")
+                        .append(CITIES[random.nextInt(CITIES.length)]).append(", NY ")
+                        .append(10000 + random.nextInt(90000)).append(". ");
+                case 2 -> html.append("See COMP ").append(100 + random.nextInt(900)).append(" and MATH ")
+                        .append(100 + random.nextInt(900)).append(". ");
+                default -> {
+                }
+            }
+            html.append("</p>");
+        }
+        return html.append("</main></body></html>").toString();
+    }
+
+    /**
+     * Stop serving the site.
+     */
+    @Override
+    public void close() {
+        servers.forEach(server -> server.stop(0));
+        executor.close();
+    }
+}
@@ -0,0 +1,554 @@
+// 10.15.2026
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.bulk.BulkWriteInsert;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.*;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory stand-in for a MongoDB collection, so that the crawler and scraper can be run end to end where there's
+ * no <code>mongod</code>. It implements only what they use: finding and counting with equality, comparison,
+ * <code>$exists</code>, <code>$in</code>, <code>$and</code> and <code>$or</code> filters (with sorting, limits and
+ * projections); updating one or many documents with <code>$set</code>, <code>$setOnInsert</code>, <code>$inc</code>
+ * and <code>$unset</code>, with or without upserting; finding and updating one document (without upserting or
+ * sorting); deleting one or many documents; unordered bulk writes of those updates and single deletes; and creating,
+ * listing and dropping indexes. Anything else throws <code>UnsupportedOperationException</code>.
+ * <p>
+ * Documents are found by <code>_id</code> directly. Each index created with only ascending keys is kept as a hash
+ * index, used by filters with an equality condition on every one of its keys, so upserting values by
+ * <code>(type, value)</code> doesn't scan the whole collection; every other filter does. Indexes are never unique, and
+ * hints are ignored. Every operation holds the collection's lock for as long as it runs, which makes it atomic, as a
+ * single document operation is in MongoDB (bulk writes are atomic as a whole here, which MongoDB doesn't promise).
+ * Cursors iterate over a snapshot of the results taken when they're opened.
+ */
+public final class InMemoryCollection implements InvocationHandler {
+    private static final CodecRegistry CODECS = MongoClientSettings.getDefaultCodecRegistry();
+    private static final String ID = "_id";
+
+    private final MongoNamespace namespace;
+    private final LinkedHashMap<BsonValue, BsonDocument> documents = new LinkedHashMap<>();
+    // By the names of their keys (in order), each index's ids by their documents' values of the keys
+    private final LinkedHashMap<List<String>, HashMap<List<BsonValue>, Set<BsonValue>>> indexes = new LinkedHashMap<>();
+    private final LinkedHashMap<String, List<String>> indexNames = new LinkedHashMap<>();
+
+    private InMemoryCollection(MongoNamespace namespace) {
+        this.namespace = namespace;
+    }
+
+    /**
+     * Create an empty collection.
+     *
+     * @param databaseName   the name of the database the collection would be in
+     * @param collectionName the collection's name
+     * @return the collection
+     */
+    @SuppressWarnings("unchecked")
+    public static MongoCollection<org.bson.Document> create(String databaseName, String collectionName) {
+        return (MongoCollection<org.bson.Document>) Proxy.newProxyInstance(InMemoryCollection.class.getClassLoader(),
+                new Class<?>[]{MongoCollection.class},
+                new InMemoryCollection(new MongoNamespace(databaseName, collectionName)));
+    }
+
+    @Override
+    public synchronized Object invoke(Object proxy, Method method, Object[] args) {
+        Object[] a = args != null ? args : new Object[0];
+        switch (method.getName()) {
+            case "getNamespace":
+                return namespace;
+            case "find":
+                BsonDocument filter = a.length > 0 && a[0] instanceof Bson bson ? toBson(bson) : new BsonDocument();
+                return new Query(filter).proxy();
+            case "countDocuments":
+                return (long) select(a.length > 0 ? toBson((Bson) a[0]) : new BsonDocument()).size();
+            case "updateOne":
+            case "updateMany":
+                return update(toBson((Bson) a[0]), toBson((Bson) a[1]),
+                        a.length > 2 && a[2] instanceof UpdateOptions options && options.isUpsert(),
+                        method.getName().equals("updateMany"));
+            case "findOneAndUpdate":
+                return findOneAndUpdate(toBson((Bson) a[0]), toBson((Bson) a[1]),
+                        a.length > 2 ? (FindOneAndUpdateOptions) a[2] : new FindOneAndUpdateOptions());
+            case "bulkWrite":
+                return bulkWrite((List<?>) a[0]);
+            case "deleteOne":
+            case "deleteMany":
+                return delete(toBson((Bson) a[0]), method.getName().equals("deleteMany"));
+            case "createIndex":
+                return createIndex(toBson((Bson) a[0]));
+            case "listIndexes":
+                List<org.bson.Document> list = new ArrayList<>();
+                list.add(new org.bson.Document("name", "_id_").append("key", new org.bson.Document(ID, 1)));
+                indexNames.forEach((name, keys) -> {
+                    org.bson.Document key = new org.bson.Document();
+                    keys.forEach(k -> key.append(k, 1));
+                    list.add(new org.bson.Document("name", name).append("key", key));
+                });
+                return new Results(list).proxy(method.getReturnType());
+            case "dropIndex":
+                List<String> keys = indexNames.remove((String) a[0]);
+                if (keys != null) {
+                    indexes.remove(keys);
+                }
+                return null;
+            case "toString":
+                return "InMemoryCollection[" + namespace + "]";
+            case "hashCode":
+                return System.identityHashCode(this);
+            case "equals":
+                return proxy == a[0];
+            default:
+                throw new UnsupportedOperationException("Not supported by the in-memory collection: " + method);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------
+    // Writes
+
+    private UpdateResult update(BsonDocument filter, BsonDocument update, boolean upsert, boolean many) {
+        List<BsonValue> ids = select(filter);
+        if (ids.isEmpty()) {
+            if (!upsert) {
+                return UpdateResult.acknowledged(0, 0L, null);
+            }
+            BsonDocument inserted = seed(filter);
+            apply(inserted, update, true);
+            put(inserted);
+            return UpdateResult.acknowledged(0, 0L, inserted.get(ID));
+        }
+        long modified = 0;
+        for (BsonValue id : many ? ids : ids.subList(0, 1)) {
+            BsonDocument before = documents.get(id);
+            BsonDocument after = before.clone();
+            apply(after, update, false);
+            if (!after.equals(before)) {
+                unindex(before);
+                documents.put(id, after);
+                index(after);
+                modified++;
+            }
+        }
+        return UpdateResult.acknowledged(many ? ids.size() : 1, modified, null);
+    }
+
+    private org.bson.Document findOneAndUpdate(BsonDocument filter, BsonDocument update,
+                                               FindOneAndUpdateOptions options) {
+        if (options.isUpsert() || options.getSort() != null) {
+            throw new UnsupportedOperationException("Not supported by the in-memory collection: findOneAndUpdate with "
+                    + "upsert or sort");
+        }
+        List<BsonValue> ids = select(filter);
+        if (ids.isEmpty()) {
+            return null;
+        }
+        BsonDocument before = documents.get(ids.get(0));
+        BsonDocument after = before.clone();
+        apply(after, update, false);
+        unindex(before);
+        documents.put(ids.get(0), after);
+        index(after);
+        return toDocument(project(options.getReturnDocument() == ReturnDocument.AFTER ? after : before,
+                options.getProjection() != null ? toBson(options.getProjection()) : null));
+    }
+
+    private BulkWriteResult bulkWrite(List<?> writes) {
+        int matched = 0;
+        int modified = 0;
+        List<BulkWriteUpsert> upserts = new ArrayList<>();
+        int deleted = 0;
+        for (int i = 0; i < writes.size(); i++) {
+            if (writes.get(i) instanceof DeleteOneModel<?> delete) {
+                deleted += (int) delete(toBson(delete.getFilter()), false).getDeletedCount();
+                continue;
+            }
+            if (!(writes.get(i) instanceof UpdateOneModel<?> write)) {
+                throw new UnsupportedOperationException("Not supported by the in-memory collection: "
+                        + ((WriteModel<?>) writes.get(i)).getClass().getSimpleName());
+            }
+            UpdateResult result = update(toBson(write.getFilter()), toBson(write.getUpdate()),
+                    write.getOptions().isUpsert(), false);
+            matched += (int) result.getMatchedCount();
+            modified += (int) result.getModifiedCount();
+            if (result.getUpsertedId() != null) {
+                upserts.add(new BulkWriteUpsert(i, result.getUpsertedId()));
+            }
+        }
+        return BulkWriteResult.acknowledged(0, matched, deleted, modified, upserts, List.of());
+    }
+
+    private DeleteResult delete(BsonDocument filter, boolean many) {
+        List<BsonValue> ids = select(filter);
+        for (BsonValue id : many ? ids : ids.subList(0, Integer.min(1, ids.size()))) {
+            unindex(documents.remove(id));
+        }
+        return DeleteResult.acknowledged(many ? ids.size() : Integer.min(1, ids.size()));
+    }
+
+    private String createIndex(BsonDocument keys) {
+        StringJoiner name = new StringJoiner("_");
+        keys.forEach((key, direction) -> name.add(key).add(String.valueOf(direction.asNumber().intValue())));
+        boolean hashable = keys.values().stream().allMatch(direction -> direction.asNumber().intValue() == 1);
+        if (hashable && !indexNames.containsKey(name.toString())) {
+            List<String> fields = List.copyOf(keys.keySet());
+            HashMap<List<BsonValue>, Set<BsonValue>> index = new HashMap<>();
+            documents.values().forEach(doc -> index.computeIfAbsent(keyOf(doc, fields), k -> new LinkedHashSet<>())
+                    .add(doc.get(ID)));
+            indexes.put(fields, index);
+            indexNames.put(name.toString(), fields);
+        }
+        return name.toString();
+    }
+
+    private void put(BsonDocument doc) {
+        documents.put(doc.get(ID), doc);
+        index(doc);
+    }
+
+    private void index(BsonDocument doc) {
+        indexes.forEach((fields, index) -> index.computeIfAbsent(keyOf(doc, fields), k -> new LinkedHashSet<>())
+                .add(doc.get(ID)));
+    }
+
+    private void unindex(BsonDocument doc) {
+        indexes.forEach((fields, index) -> {
+            Set<BsonValue> ids = index.get(keyOf(doc, fields));
+            if (ids != null) {
+                ids.remove(doc.get(ID));
+            }
+        });
+    }
+
+    private static List<BsonValue> keyOf(BsonDocument doc, List<String> fields) {
+        List<BsonValue> key = new ArrayList<>(fields.size());
+        fields.forEach(field -> key.add(doc.get(field, BsonNull.VALUE)));
+        return key;
+    }
+
+    /**
+     * Start the document an upsert inserts, from the fields its filter requires to be equal to a value.
+     */
+    private static BsonDocument seed(BsonDocument filter) {
+        BsonDocument doc = new BsonDocument();
+        equalities(filter).forEach(doc::put);
+        if (!doc.containsKey(ID)) {
+            doc.put(ID, new BsonObjectId(new ObjectId()));
+        }
+        return doc;
+    }
+
+    private static void apply(BsonDocument doc, BsonDocument update, boolean inserting) {
+        update.forEach((operator, fields) -> {
+            switch (operator) {
+                case "$set" -> fields.asDocument().forEach(doc::put);
+                case "$setOnInsert" -> {
+                    if (inserting) {
+                        fields.asDocument().forEach(doc::put);
+                    }
+                }
+                case "$inc" -> fields.asDocument()
+                        .forEach((field, amount) -> doc.put(field, add(doc.get(field), amount)));
+                case "$unset" -> fields.asDocument().keySet().forEach(doc::remove);
+                default -> throw new UnsupportedOperationException("Not supported by the in-memory collection: "
+                        + operator);
+            }
+        });
+    }
+
+    private static BsonValue add(BsonValue value, BsonValue amount) {
+        if (value == null) {
+            return amount;
+        }
+        if (value.isInt32() && amount.isInt32()) {
+            long sum = (long) value.asInt32().getValue() + amount.asInt32().getValue();
+            return sum == (int) sum ? new BsonInt32((int) sum) : new BsonInt64(sum);
+        }
+        if ((value.isInt32() || value.isInt64()) && (amount.isInt32() || amount.isInt64())) {
+            return new BsonInt64(value.asNumber().longValue() + amount.asNumber().longValue());
+        }
+        return new BsonDouble(value.asNumber().doubleValue() + amount.asNumber().doubleValue());
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------
+    // Reads
+
+    /**
+     * Get the ids of the documents matching a filter, in the order they were inserted.
+     */
+    private List<BsonValue> select(BsonDocument filter) {
+        Map<String, BsonValue> equalities = equalities(filter);
+        Collection<BsonValue> candidates = null;
+        if (equalities.containsKey(ID)) {
+            candidates = documents.containsKey(equalities.get(ID)) ? List.of(equalities.get(ID)) : List.of();
+        } else {
+            for (Map.Entry<List<String>, HashMap<List<BsonValue>, Set<BsonValue>>> index : indexes.entrySet()) {
+                if (equalities.keySet().containsAll(index.getKey())) {
+                    List<BsonValue> key = new ArrayList<>();
+                    index.getKey().forEach(field -> key.add(equalities.get(field)));
+                    candidates = index.getValue().getOrDefault(key, Set.of());
+                    break;
+                }
+            }
+        }
+        List<BsonValue> ids = new ArrayList<>();
+        for (BsonValue id : candidates != null ? candidates : documents.keySet()) {
+            if (matches(documents.get(id), filter)) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Get the fields a filter requires to be equal to a value, at its top level or in a top-level <code>$and</code>.
+     */
+    private static Map<String, BsonValue> equalities(BsonDocument filter) {
+        Map<String, BsonValue> equalities = new LinkedHashMap<>();
+        filter.forEach((key, condition) -> {
+            if (key.equals("$and")) {
+                condition.asArray().forEach(clause -> equalities.putAll(equalities(clause.asDocument())));
+            } else if (!key.startsWith("$")) {
+                if (!isOperators(condition)) {
+                    equalities.put(key, condition);
+                } else if (condition.asDocument().containsKey("$eq")) {
+                    equalities.put(key, condition.asDocument().get("$eq"));
+                }
+            }
+        });
+        return equalities;
+    }
+
+    private static boolean matches(BsonDocument doc, BsonDocument filter) {
+        for (Map.Entry<String, BsonValue> clause : filter.entrySet()) {
+            String key = clause.getKey();
+            BsonValue condition = clause.getValue();
+            boolean matched = switch (key) {
+                case "$and" -> condition.asArray().stream().allMatch(c -> matches(doc, c.asDocument()));
+                case "$or" -> condition.asArray().stream().anyMatch(c -> matches(doc, c.asDocument()));
+                default -> fieldMatches(doc.get(key), condition);
+            };
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean fieldMatches(BsonValue value, BsonValue condition) {
+        if (!isOperators(condition)) {
+            return value != null && compare(value, condition) == 0;
+        }
+        for (Map.Entry<String, BsonValue> operator : condition.asDocument().entrySet()) {
+            BsonValue operand = operator.getValue();
+            boolean matched = switch (operator.getKey()) {
+                case "$eq" -> value != null && compare(value, operand) == 0;
+                case "$ne" -> value == null || compare(value, operand) != 0;
+                case "$gt" -> value != null && comparable(value, operand) && compare(value, operand) > 0;
+                case "$gte" -> value != null && comparable(value, operand) && compare(value, operand) >= 0;
+                case "$lt" -> value != null && comparable(value, operand) && compare(value, operand) < 0;
+                case "$lte" -> value != null && comparable(value, operand) && compare(value, operand) <= 0;
+                case "$exists" -> (value != null) == operand.asBoolean().getValue();
+                case "$in" -> value != null && operand.asArray().stream().anyMatch(v -> compare(value, v) == 0);
+                default -> throw new UnsupportedOperationException("Not supported by the in-memory collection: "
+                        + operator.getKey());
+            };
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOperators(BsonValue condition) {
+        return condition.isDocument() && !condition.asDocument().isEmpty()
+                && condition.asDocument().getFirstKey().startsWith("$");
+    }
+
+    private static boolean comparable(BsonValue a, BsonValue b) {
+        return (a.isNumber() && b.isNumber()) || a.getBsonType() == b.getBsonType();
+    }
+
+    /**
+     * Compare two values, numbers by their value whatever their type. Values of different types are ordered by type,
+     * missing ones first.
+     */
+    private static int compare(BsonValue a, BsonValue b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a.isNumber() && b.isNumber()) {
+            if ((a.isInt32() || a.isInt64()) && (b.isInt32() || b.isInt64())) {
+                return Long.compare(a.asNumber().longValue(), b.asNumber().longValue());
+            }
+            return Double.compare(a.asNumber().doubleValue(), b.asNumber().doubleValue());
+        }
+        if (a.getBsonType() != b.getBsonType()) {
+            return a.getBsonType().compareTo(b.getBsonType());
+        }
+        return switch (a.getBsonType()) {
+            case STRING -> a.asString().getValue().compareTo(b.asString().getValue());
+            case DATE_TIME -> Long.compare(a.asDateTime().getValue(), b.asDateTime().getValue());
+            case OBJECT_ID -> a.asObjectId().getValue().compareTo(b.asObjectId().getValue());
+            case BOOLEAN -> Boolean.compare(a.asBoolean().getValue(), b.asBoolean().getValue());
+            default -> a.equals(b) ? 0 : Integer.compare(a.hashCode(), b.hashCode());
+        };
+    }
+
+    private static BsonDocument project(BsonDocument doc, BsonDocument projection) {
+        if (projection == null || projection.isEmpty()) {
+            return doc;
+        }
+        boolean inclusive = projection.entrySet().stream()
+                .anyMatch(e -> !e.getKey().equals(ID) && e.getValue().asNumber().intValue() != 0);
+        BsonDocument projected = new BsonDocument();
+        doc.forEach((field, value) -> {
+            BsonValue spec = projection.get(field);
+            boolean included = field.equals(ID)
+                    ? spec == null || spec.asNumber().intValue() != 0
+                    : inclusive ? spec != null && spec.asNumber().intValue() != 0 : spec == null;
+            if (included) {
+                projected.put(field, value);
+            }
+        });
+        return projected;
+    }
+
+    private static BsonDocument toBson(Bson bson) {
+        return bson.toBsonDocument(BsonDocument.class, CODECS);
+    }
+
+    private static org.bson.Document toDocument(BsonDocument bson) {
+        return CODECS.get(org.bson.Document.class)
+                .decode(new BsonDocumentReader(bson), DecoderContext.builder().build());
+    }
+
+    /**
+     * The results of a <code>find</code>, run each time they're iterated.
+     */
+    private final class Query implements InvocationHandler {
+        private BsonDocument filter;
+        private BsonDocument projection;
+        private BsonDocument sort;
+        private int limit = 0;
+
+        private Query(BsonDocument filter) {
+            this.filter = filter;
+        }
+
+        private Object proxy() {
+            return Proxy.newProxyInstance(InMemoryCollection.class.getClassLoader(),
+                    new Class<?>[]{com.mongodb.client.FindIterable.class}, this);
+        }
+
+        private List<org.bson.Document> run() {
+            synchronized (InMemoryCollection.this) {
+                List<BsonDocument> matched = new ArrayList<>();
+                select(filter).forEach(id -> matched.add(documents.get(id)));
+                if (sort != null) {
+                    Comparator<BsonDocument> order = (a, b) -> 0;
+                    for (Map.Entry<String, BsonValue> key : sort.entrySet()) {
+                        int direction = key.getValue().asNumber().intValue();
+                        String field = key.getKey();
+                        order = order.thenComparing((a, b) -> direction * compare(a.get(field), b.get(field)));
+                    }
+                    matched.sort(order);
+                }
+                List<org.bson.Document> results = new ArrayList<>();
+                for (BsonDocument doc : limit > 0 && matched.size() > limit ? matched.subList(0, limit) : matched) {
+                    results.add(toDocument(project(doc, projection)));
+                }
+                return results;
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "filter" -> filter = toBson((Bson) args[0]);
+                case "projection" -> projection = toBson((Bson) args[0]);
+                case "sort" -> sort = toBson((Bson) args[0]);
+                case "limit" -> limit = Math.abs((int) args[0]);
+                case "batchSize", "hint", "hintString", "maxTime", "comment", "noCursorTimeout" -> {
+                }
+                default -> {
+                    return new Results(run()).invoke(proxy, method, args);
+                }
+            }
+            return proxy;
+        }
+    }
+
+    /**
+     * A fixed list of results, iterated like a <code>MongoIterable</code>.
+     */
+    private static final class Results implements InvocationHandler {
+        private final List<org.bson.Document> results;
+
+        private Results(List<org.bson.Document> results) {
+            this.results = results;
+        }
+
+        private Object proxy(Class<?> iterableType) {
+            return Proxy.newProxyInstance(InMemoryCollection.class.getClassLoader(), new Class<?>[]{iterableType},
+                    this);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "first":
+                    return results.isEmpty() ? null : results.get(0);
+                case "iterator":
+                case "cursor":
+                    return cursor(results.iterator());
+                case "forEach":
+                    results.forEach((Consumer<org.bson.Document>) args[0]);
+                    return null;
+                case "into":
+                    ((Collection<org.bson.Document>) args[0]).addAll(results);
+                    return args[0];
+                case "batchSize":
+                    return proxy;
+                default:
+                    throw new UnsupportedOperationException("Not supported by the in-memory collection: " + method);
+            }
+        }
+
+        private static MongoCursor<org.bson.Document> cursor(Iterator<org.bson.Document> iterator) {
+            // The proxy's next() and tryNext() only return the iterator's documents
+            @SuppressWarnings("unchecked")
+            MongoCursor<org.bson.Document> cursor = (MongoCursor<org.bson.Document>) Proxy.newProxyInstance(
+                    InMemoryCollection.class.getClassLoader(),
+                    new Class<?>[]{MongoCursor.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "hasNext" -> iterator.hasNext();
+                        case "next" -> iterator.next();
+                        case "tryNext" -> iterator.hasNext() ? iterator.next() : null;
+                        case "available" -> iterator.hasNext() ? 1 : 0;
+                        case "close" -> null;
+                        default -> throw new UnsupportedOperationException("Not supported by the in-memory collection: "
+                                + method);
+                    });
+            return cursor;
+        }
+    }
+}
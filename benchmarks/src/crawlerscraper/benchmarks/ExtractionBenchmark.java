@@ -0,0 +1,104 @@
+// 10.15.2026
+
+package crawlerscraper.benchmarks;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Benchmarks the scraper's extraction of each page in the corpus (<code>benchmarks/corpus</code>), already parsed, so
+ * that only the extraction itself is measured. <code>extractPageData</code> is the whole of it; the others are its
+ * parts.
+ * <p>
+ * The crawler's classes are in the default package, which can't be imported from a named one (and JMH requires one),
+ * so the extractor is reached through method handles. The handles are constants, invoked exactly, so the JIT inlines
+ * through them as it would a direct call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExtractionBenchmark {
+    // The corpus is the Node.js documentation, so its links to nodejs.org are the internal urls
+    private static final String DOMAIN = "nodejs.org";
+    private static final String BASE_URL = "https://nodejs.org/api/";
+
+    private static final MethodHandle NEW_EXTRACTOR;
+    private static final MethodHandle EXTRACT_PAGE_DATA;
+    private static final MethodHandle EXTRACT_ALL_URL_TYPES;
+    private static final MethodHandle EXTRACT_IMAGE_URLS;
+    private static final MethodHandle EXTRACT_ITEMS_MATCHING_PATTERNS;
+
+    static {
+        try {
+            Class<?> extractor = Class.forName("PageExtractor");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            NEW_EXTRACTOR = lookup.findConstructor(extractor, methodType(void.class, String.class))
+                    .asType(methodType(Object.class, String.class));
+            EXTRACT_PAGE_DATA = extraction(lookup, extractor, "extractPageData");
+            EXTRACT_ALL_URL_TYPES = extraction(lookup, extractor, "extractAllUrlTypes");
+            EXTRACT_IMAGE_URLS = extraction(lookup, extractor, "extractImageUrls");
+            EXTRACT_ITEMS_MATCHING_PATTERNS = extraction(lookup, extractor, "extractItemsMatchingPatterns");
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"string_decoder.html", "url.html", "buffer.html"})
+    public String page;
+
+    private Object extractor;
+    private Document document;
+
+    @Setup
+    public void setUp() throws Throwable {
+        try (InputStream in = ExtractionBenchmark.class.getResourceAsStream("/corpus/" + page)) {
+            if (in == null) {
+                throw new IOException("No page " + page + " in the corpus");
+            }
+            document = Jsoup.parse(in, "UTF-8", BASE_URL + page);
+        }
+        extractor = (Object) NEW_EXTRACTOR.invokeExact(DOMAIN);
+    }
+
+    @Benchmark
+    public Object extractPageData() throws Throwable {
+        return (Object) EXTRACT_PAGE_DATA.invokeExact(extractor, document);
+    }
+
+    @Benchmark
+    public Object extractAllUrlTypes() throws Throwable {
+        return (Object) EXTRACT_ALL_URL_TYPES.invokeExact(extractor, document);
+    }
+
+    @Benchmark
+    public Object extractImageUrls() throws Throwable {
+        return (Object) EXTRACT_IMAGE_URLS.invokeExact(extractor, document);
+    }
+
+    @Benchmark
+    public Object extractItemsMatchingPatterns() throws Throwable {
+        return (Object) EXTRACT_ITEMS_MATCHING_PATTERNS.invokeExact(extractor, document);
+    }
+
+    /**
+     * Find one of the extractor's public methods taking a parsed page and returning a map, typed to be invoked on an
+     * <code>Object</code>.
+     */
+    private static MethodHandle extraction(MethodHandles.Lookup lookup, Class<?> extractor, String name)
+            throws ReflectiveOperationException {
+        return lookup.findVirtual(extractor, name, methodType(HashMap.class, Document.class))
+                .asType(methodType(Object.class, Object.class, Document.class));
+    }
+}
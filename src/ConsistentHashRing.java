@@ -0,0 +1,54 @@
+// 10.15.2026
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns keys to nodes by consistent hashing: each node is placed on a ring of 64-bit hashes at a number of points
+ * (its virtual nodes), and a key belongs to the node at the first point at or after the key's own hash, wrapping
+ * around. When a node joins or leaves, only the keys next to its points change hands, about <i>1 / n</i> of them,
+ * rather than nearly all of them as with a hash modulo the number of nodes. The virtual nodes spread each node's share
+ * evenly around the ring.
+ * <p>
+ * Every node that builds a ring from the same node ids assigns every key the same way. Immutable.
+ */
+public class ConsistentHashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    /**
+     * @param nodeIds the ids of the nodes to place on the ring
+     */
+    public ConsistentHashRing(Collection<String> nodeIds) {
+        this(nodeIds, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param nodeIds      the ids of the nodes to place on the ring
+     * @param virtualNodes the number of points each node is placed at
+     */
+    public ConsistentHashRing(Collection<String> nodeIds, int virtualNodes) {
+        for (String nodeId : nodeIds) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On the (astronomically unlikely) chance of two points colliding, the smaller id keeps the point
+                ring.merge(UrlFingerprint.of(nodeId + "#" + i), nodeId, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+    }
+
+    /**
+     * Get the node a key belongs to.
+     *
+     * @param key the key
+     * @return the id of the key's node, or null if the ring has no nodes
+     */
+    public String nodeFor(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> point = ring.ceilingEntry(UrlFingerprint.of(key));
+        return (point != null ? point : ring.firstEntry()).getValue();
+    }
+}
@@ -0,0 +1,159 @@
+// 10.15.2026
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the crawler and scraper as two separate stages on their own threads. The crawl stage is a single dispatcher
+ * thread that starts downloads on the crawler's fetch engine (which decides how many run at once); each download puts
+ * its page on the scraper's bounded queue. The scrape stage is a pool of threads taking pages off that queue and
+ * feeding the internal urls found back to the crawler.
+ * <p>
+ * The queue from the crawler to the scraper is bounded, so if scraping falls behind, downloads wait for room and the
+ * dispatcher in turn waits for a free download slot. The urls going back to the crawler are not bounded, as they are
+ * the crawler's (persisted) frontier; bounding both directions of the cycle could leave each stage waiting on the
+ * other forever.
+ */
+public class CrawlPipeline implements AutoCloseable {
+    private static final long POLL_INTERVAL_MS = 1000;
+
+    private final Crawler crawler;
+    private final Scraper scraper;
+    private final int numScraperThreads;
+    // Created by start() rather than the constructor, so that the pipeline isn't handed to them half set up
+    private volatile Thread crawlerThread;
+    private final List<Thread> scraperThreads = new ArrayList<>();
+    private final AtomicInteger numDownloadsStarted = new AtomicInteger();
+    private final AtomicInteger numPagesScraped = new AtomicInteger();
+    private final boolean displayProcessedUrls;
+    private volatile boolean stopping = false;
+
+    /**
+     * @param crawler              the crawler to run in the crawl stage
+     * @param scraper              the scraper to run in the scrape stage
+     * @param numScraperThreads    the number of threads scraping pages at once
+     * @param displayProcessedUrls whether to print the url of each page as each stage processes it
+     */
+    public CrawlPipeline(Crawler crawler, Scraper scraper, int numScraperThreads, boolean displayProcessedUrls) {
+        if (numScraperThreads < 1) {
+            throw new IllegalArgumentException("numScraperThreads must be at least 1, was " + numScraperThreads);
+        }
+        this.crawler = crawler;
+        this.scraper = scraper;
+        this.displayProcessedUrls = displayProcessedUrls;
+        this.numScraperThreads = numScraperThreads;
+    }
+
+    /**
+     * Start both stages. A pipeline can only be started once.
+     */
+    public synchronized void start() {
+        if (crawlerThread != null) {
+            throw new IllegalStateException("The pipeline was already started");
+        }
+        for (int i = 0; i < numScraperThreads; i++) {
+            scraperThreads.add(new Thread(this::runScrapeStage, "scraper-" + i));
+        }
+        crawlerThread = new Thread(this::runCrawlStage, "crawler");
+        crawlerThread.start();
+        scraperThreads.forEach(Thread::start);
+    }
+
+    /**
+     * Wait until there's nothing left to download or scrape, or until the timeout elapses. The pipeline must have been
+     * started.
+     *
+     * @param timeoutMs the maximum time to wait
+     * @return <code>true</code> if the pipeline has finished; otherwise <code>false</code>.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitFinished(long timeoutMs) throws InterruptedException {
+        Thread crawlerThread = this.crawlerThread;
+        if (crawlerThread == null) {
+            throw new IllegalStateException("The pipeline wasn't started");
+        }
+        crawlerThread.join(timeoutMs);
+        return !crawlerThread.isAlive();
+    }
+
+    /**
+     * Indicate if there's nothing left to download or scrape. A page is always counted by at least one of the crawler
+     * and scraper as it moves between them, so the crawler is checked on both sides of the scraper to catch a page (or
+     * urls) handed over in between.
+     *
+     * @return <code>true</code> if both stages are out of work; otherwise <code>false</code>.
+     */
+    public boolean isFinished() {
+        return !crawler.hasNext() && !scraper.hasNext() && !crawler.hasNext();
+    }
+
+    /**
+     * Get the number of downloads the crawl stage has started
+     *
+     * @return the number of downloads started
+     */
+    public int getNumDownloadsStarted() {
+        return numDownloadsStarted.get();
+    }
+
+    /**
+     * Get the number of pages the scrape stage has processed
+     *
+     * @return the number of pages scraped
+     */
+    public int getNumPagesScraped() {
+        return numPagesScraped.get();
+    }
+
+    /**
+     * Stop both stages and wait for their threads to finish. Downloads already started are left to the fetch engine.
+     */
+    @Override
+    public synchronized void close() {
+        stopping = true;
+        if (crawlerThread == null) {
+            return;
+        }
+        crawlerThread.interrupt();
+        scraperThreads.forEach(Thread::interrupt);
+        try {
+            crawlerThread.join();
+            for (Thread thread : scraperThreads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runCrawlStage() {
+        while (!stopping && !Thread.currentThread().isInterrupted() && !isFinished()) {
+            String url = crawler.processNext(scraper, false);
+            if (url != null) {
+                numDownloadsStarted.incrementAndGet();
+                if (displayProcessedUrls) {
+                    System.out.println("///    Crawler processed: " + url);
+                }
+            }
+        }
+        // Once the crawl stage is done there's nothing more for the scrape stage to wait for
+        stopping = true;
+    }
+
+    private void runScrapeStage() {
+        try {
+            while (!stopping || scraper.hasNext()) {
+                String url = scraper.processNext(crawler, POLL_INTERVAL_MS);
+                if (url != null) {
+                    numPagesScraped.incrementAndGet();
+                    if (displayProcessedUrls) {
+                        System.out.println("///    Scraper processed: " + url);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+// 10.15.2026
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * A snapshot of the crawl's progress, taken at one moment so that it can be handed to another thread (such as the
+ * results console) and read there without touching the crawler or scraper.
+ */
+public final class CrawlStats {
+    private final long capturedAtMs;
+    private final int crawlerUrlsVisited;
+    private final int crawlerUrlsLeftToVisit;
+    private final int downloadsInFlight;
+    private final int pagesUnchanged;
+    private final long downloadsTruncated;
+    private final long downloadsAborted;
+    private final int scraperUrlsVisited;
+    private final int scraperUrlsLeftToVisit;
+    private final long queuedPageBytes;
+    private final long archiveRecords;
+    private final long archiveBytes;
+    private final long archiveFailures;
+    private final long dataValuesWritten;
+    private final long dataWriteRoundTrips;
+    private final long urlChangesWritten;
+    private final long urlChangeFlushes;
+    private final int urlChangesPending;
+    private final long crawlerFingerprintBytes;
+    private final long scraperFingerprintBytes;
+    private final double expectedFalseDrops;
+    private final Map<UrlCanonicalizer.Rule, Long> canonicalizationHits;  // null if urls aren't canonicalized
+
+    private CrawlStats(Crawler crawler, Scraper scraper, FetchEngine fetchEngine, WriteBehindBuffer writeBuffer,
+                       WarcWriter archive) {
+        this.capturedAtMs = System.currentTimeMillis();
+        this.crawlerUrlsVisited = crawler.getNumUrlsVisited();
+        this.crawlerUrlsLeftToVisit = crawler.getNumUrlsLeftToVisit();
+        this.downloadsInFlight = crawler.getNumDownloadsInFlight();
+        this.pagesUnchanged = crawler.getNumPagesUnchanged();
+        this.downloadsTruncated = fetchEngine.getNumTruncated();
+        this.downloadsAborted = fetchEngine.getNumAborted();
+        this.scraperUrlsVisited = scraper.getNumUrlsVisited();
+        this.scraperUrlsLeftToVisit = scraper.getNumUrlsLeftToVisit();
+        this.queuedPageBytes = scraper.getQueuedPageBytes();
+        this.archiveRecords = archive != null ? archive.getNumRecordsWritten() : 0;
+        this.archiveBytes = archive != null ? archive.getNumBytesWritten() : 0;
+        this.archiveFailures = fetchEngine.getNumArchiveFailures();
+        this.dataValuesWritten = scraper.getNumDataValuesWritten();
+        this.dataWriteRoundTrips = scraper.getNumDataWriteRoundTrips();
+        this.urlChangesWritten = writeBuffer != null ? writeBuffer.getNumChangesWritten() : 0;
+        this.urlChangeFlushes = writeBuffer != null ? writeBuffer.getNumFlushes() : 0;
+        this.urlChangesPending = writeBuffer != null ? writeBuffer.getNumPending() : 0;
+        this.crawlerFingerprintBytes = crawler.getEncounteredUrlsMemoryBytes();
+        this.scraperFingerprintBytes = scraper.getEncounteredUrlsMemoryBytes();
+        this.expectedFalseDrops = crawler.getExpectedFalseDrops() + scraper.getExpectedFalseDrops();
+        this.canonicalizationHits = crawler.getCanonicalizer() != null ? crawler.getCanonicalizer().getHits() : null;
+    }
+
+    /**
+     * Take a snapshot of the crawl's progress.
+     *
+     * @param crawler     the crawler
+     * @param scraper     the scraper
+     * @param fetchEngine the crawler's fetch engine
+     * @param writeBuffer the buffer holding the url changes, or null if there isn't one
+     * @param archive     the archive of the fetched pages, or null if there isn't one
+     * @return the snapshot
+     */
+    public static CrawlStats capture(Crawler crawler, Scraper scraper, FetchEngine fetchEngine,
+                                     WriteBehindBuffer writeBuffer, WarcWriter archive) {
+        return new CrawlStats(crawler, scraper, fetchEngine, writeBuffer, archive);
+    }
+
+    /**
+     * Get the snapshot as lines of the status display
+     *
+     * @return the lines to print, without line breaks
+     */
+    public List<String> toStatusLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add("///    Crawler visited " + crawlerUrlsVisited + " out of the " +
+                (crawlerUrlsLeftToVisit + crawlerUrlsVisited) + " discovered pages so far, " +
+                downloadsInFlight + " downloading, " + pagesUnchanged + " unchanged, " +
+                downloadsTruncated + " truncated, " + downloadsAborted + " aborted. ");
+        lines.add("///    Scraper visited " + scraperUrlsVisited + " out of the " +
+                (scraperUrlsLeftToVisit + scraperUrlsVisited) + " downloaded pages so far, " +
+                (queuedPageBytes / 1024) + " KB queued. ");
+        lines.add("///    Archived " + archiveRecords + " WARC records, " + (archiveBytes / 1024) + " KB, " +
+                archiveFailures + " pages failed to be archived. ");
+        lines.add("///    Scraper stored " + dataValuesWritten + " values in " +
+                dataWriteRoundTrips + " db round trips (" + 2 * dataValuesWritten +
+                " with one read and one write per value). ");
+        lines.add("///    Url changes: " + urlChangesWritten + " written in " +
+                urlChangeFlushes + " bulk writes, " + urlChangesPending + " pending. ");
+        lines.add(String.format("///    Url fingerprints take %d KB (crawler) and %d KB (scraper), " +
+                        "expected urls lost to collisions: %.2e",
+                crawlerFingerprintBytes / 1024, scraperFingerprintBytes / 1024, expectedFalseDrops));
+        if (canonicalizationHits != null) {
+            StringJoiner hits = new StringJoiner(", ", "///    Urls canonicalized: ", ". ");
+            canonicalizationHits.forEach((rule, count) -> hits.add(count + " " + rule.label));
+            lines.add(hits.toString());
+        }
+        return lines;
+    }
+
+    public long getCapturedAtMs() {
+        return capturedAtMs;
+    }
+
+    public int getCrawlerUrlsVisited() {
+        return crawlerUrlsVisited;
+    }
+
+    public int getScraperUrlsVisited() {
+        return scraperUrlsVisited;
+    }
+
+    public long getDataValuesWritten() {
+        return dataValuesWritten;
+    }
+}
@@ -1,32 +1,185 @@
 // 5.30.2023
 
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.model.Projections;
-import com.mongodb.client.model.UpdateOptions;
-import com.mongodb.client.model.Updates;
-import org.bson.conversions.Bson;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The crawler is responsible for downloading the pages for all internal urls found. These are provided by the scraper
- * when they are found.
+ * when they are found. Downloads are run concurrently by the crawler's {@link FetchEngine} and each page is handed to
+ * the scraper as soon as its download completes. Which url is downloaded next is decided by a {@link HostScheduler} so
+ * that each host is given its own politeness delay.
+ * <p>
+ * The ETag, Last-Modified and content hash of every page downloaded are kept with its url. In recrawl mode every url
+ * already visited is visited again, but conditionally: a page the server reports as not modified, or whose content
+ * hash is the same as before, isn't downloaded again (or its body is dropped) and isn't given to the scraper. If the
+ * fetch engine is given a {@link WarcWriter}, every request and response the crawler fetches is also archived.
+ * <p>
+ * Given a snapshot file, the urls are loaded from the {@link FrontierSnapshot} last saved to it, instead of from the
+ * whole of the db.
+ * <p>
+ * Given {@link UrlLeases}, the frontier is shared with the other nodes of a distributed crawl: the urls found are only
+ * added to the db, and the urls to download are claimed from it a batch at a time, from the hosts this node owns. The
+ * crawl only runs out of urls once no node has any left.
+ * <p>
+ * Given a {@link UrlCanonicalizer}, every url queued is rewritten into its canonical form first, so that the different
+ * ways of writing an url (with or without <code>www.</code>, a default port, tracking parameters and so on) are only
+ * downloaded once.
+ * <p>
+ * Given a {@link UrlScorer}, the urls are downloaded by priority rather than in the order they were found: each url is
+ * scored by its depth (the number of links followed from the initial url to reach it), the number of pages linking to
+ * it, and the url itself, and is raised as more pages are found linking to it. An url's depth and the priority it was
+ * queued with are kept in its document, so the frontier keeps its order across restarts (with the in-links counted
+ * afresh).
  */
 public class Crawler {
-    private final MongoCollection<org.bson.Document> urlsCollection;  // holds the urls to be visited and the urls already visited
-    private final org.bson.Document urlsToVisitFilter = new org.bson.Document().append("type", "toVisit");
-    private final org.bson.Document urlsVisitedFilter = new org.bson.Document().append("type", "visited");
-    private final LinkedList<String> urlsToVisit;
+    static final String DEPTH = "depth";
+    static final String PRIORITY = "priority";
 
-    private final HashSet<String> urlsVisited;
-    // Contains the hashcodes of all urls that either will be or were visited so that we don't visit any url more than once.
-    private final HashSet<Integer> allEncounteredUrls;
-    private long lastDownloadEndTime;
-    private long lastDownloadDuration = 0;
-    private final long DEFAULT_DOWNLOAD_INTERVAL_MS = 10000;
-    private String currentUrl;
+    /**
+     * What's kept about an url from when it's queued until the page downloaded from it is scraped
+     */
+    private static class FrontierUrl {
+        private final int depth;
+        private int inLinks = 1;
+
+        private FrontierUrl(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    private final UrlStore urlStore;  // holds the urls to be visited and the urls already visited
+    private final HostScheduler urlsToVisit;
+
+    private int numUrlsVisited;
+    // Contains the fingerprints of all urls that either will be or were visited so that we don't visit any url more
+    // than once.
+    private final FingerprintSet allEncounteredUrls;
+    private final FetchEngine fetchEngine;
+    private final Path snapshotFile;  // null if the urls aren't snapshotted
+    private final UrlLeases leases;  // null unless the frontier is shared with other nodes
+    private final UrlCanonicalizer canonicalizer;  // null if the urls are queued as they are
+    private final UrlScorer scorer;  // null if the urls are downloaded in the order they're found
+    // The urls queued, downloading or waiting to be scraped, by url; only kept if there's a scorer
+    private final HashMap<String, FrontierUrl> frontierUrls = new HashMap<>();
+    private final Set<String> leasedUrls = ConcurrentHashMap.newKeySet();  // claimed and not yet downloaded
+    private final Set<String> refetchUrls = ConcurrentHashMap.newKeySet();  // requeued, to download in full
+    private final long AWAIT_READY_TIMEOUT_MS = 1000;
+    private final boolean recrawl;
+    private final AtomicInteger numPagesUnchanged = new AtomicInteger();
+    private volatile String currentUrl;
+
+    /**
+     * Builds a crawler. Only the initial url and the urls collection are required; everything else is optional and left
+     * off (or given its default) unless it's set.
+     */
+    public static class Builder {
+        private final String initialUrl;
+        private final MongoCollection<org.bson.Document> urlsCollection;
+        private FetchEngine fetchEngine;
+        private HostScheduler hostScheduler;
+        private boolean recrawl;
+        private WriteBehindBuffer writeBuffer;
+        private Path snapshotFile;
+        private UrlLeases leases;
+        private UrlCanonicalizer canonicalizer;
+        private UrlScorer scorer;
+
+        /**
+         * @param initialUrl     the url to start crawling from
+         * @param urlsCollection the MongoDB collection holding the urls previously encountered
+         */
+        public Builder(String initialUrl, MongoCollection<org.bson.Document> urlsCollection) {
+            this.initialUrl = initialUrl;
+            this.urlsCollection = urlsCollection;
+        }
+
+        /**
+         * @param fetchEngine the engine that runs the page downloads; by default, one of
+         *                    <code>FetchEngine.DEFAULT_MAX_IN_FLIGHT</code> downloads
+         */
+        public Builder fetchEngine(FetchEngine fetchEngine) {
+            this.fetchEngine = fetchEngine;
+            return this;
+        }
+
+        /**
+         * @param hostScheduler decides which url to download next, keeping each host's politeness delay; by default,
+         *                      one with the default delay
+         */
+        public Builder hostScheduler(HostScheduler hostScheduler) {
+            this.hostScheduler = hostScheduler;
+            return this;
+        }
+
+        /**
+         * @param recrawl <code>true</code> to first move all urls previously visited back to be visited again, only
+         *                handing changed pages to the scraper; otherwise <code>false</code>. Can't be combined with
+         *                leases.
+         */
+        public Builder recrawl(boolean recrawl) {
+            this.recrawl = recrawl;
+            return this;
+        }
+
+        /**
+         * @param writeBuffer the buffer to hold the changes to the urls until they're written in bulk, or null to write
+         *                    each change straight away
+         */
+        public Builder writeBuffer(WriteBehindBuffer writeBuffer) {
+            this.writeBuffer = writeBuffer;
+            return this;
+        }
+
+        /**
+         * @param snapshotFile the file to load the urls from and save them to with {@link #saveSnapshot()}, or null to
+         *                     always load them from the db
+         */
+        public Builder snapshotFile(Path snapshotFile) {
+            this.snapshotFile = snapshotFile;
+            return this;
+        }
+
+        /**
+         * @param leases the leases to claim the urls to visit through, shared with the other nodes of the crawl, or
+         *               null to crawl alone
+         */
+        public Builder leases(UrlLeases leases) {
+            this.leases = leases;
+            return this;
+        }
+
+        /**
+         * @param canonicalizer rewrites each url queued into its canonical form before it's checked for duplicates, or
+         *                      null to queue the urls as they are
+         */
+        public Builder canonicalizer(UrlCanonicalizer canonicalizer) {
+            this.canonicalizer = canonicalizer;
+            return this;
+        }
+
+        /**
+         * @param scorer gives each url queued its priority, or null to download the urls in the order they're found
+         */
+        public Builder scorer(UrlScorer scorer) {
+            this.scorer = scorer;
+            return this;
+        }
+
+        /**
+         * Create the crawler, loading any previously encountered urls.
+         *
+         * @return the crawler
+         */
+        public Crawler build() {
+            if (recrawl && leases != null) {
+                throw new IllegalArgumentException("A recrawl can't be shared with other nodes");
+            }
+            return new Crawler(this);
+        }
+    }
 
     /**
      * On instantiation load any previously encountered urls into their respective collections so that we can continue
@@ -36,111 +189,237 @@ public class Crawler {
      * @param urlsCollection the MongoDB collection holding the urls previously encountered
      */
     public Crawler(String initialUrl, MongoCollection<org.bson.Document> urlsCollection) {
-        this.lastDownloadEndTime = System.currentTimeMillis() - DEFAULT_DOWNLOAD_INTERVAL_MS;  // so that the first page is processed immediately
-        this.urlsCollection = urlsCollection;
-        this.urlsToVisit = new LinkedList<>();
-        this.urlsVisited = new HashSet<>();
-        this.allEncounteredUrls = new HashSet<>();
-
+        this(new Builder(initialUrl, urlsCollection));
+    }
 
-        // Add all previously encountered urls from the db to their respective collections
-        Bson projection = Projections.fields(Projections.include("urls"), Projections.excludeId());
+    /**
+     * On instantiation load any previously encountered urls so that we can continue from where we last left off, from
+     * the snapshot file if there is one, each with the priority it was queued with. In recrawl mode, all urls
+     * previously visited are first moved back to be visited again (and so are all replayed from the db). If the
+     * frontier is shared with other nodes, the urls to visit are left in the db to be claimed rather than loaded.
+     */
+    private Crawler(Builder builder) {
+        this.leases = builder.leases;
+        this.canonicalizer = builder.canonicalizer;
+        this.scorer = builder.scorer;
+        this.urlStore = new UrlStore(builder.urlsCollection, builder.writeBuffer);
+        this.recrawl = builder.recrawl;
+        this.fetchEngine = builder.fetchEngine != null
+                ? builder.fetchEngine : new FetchEngine(FetchEngine.DEFAULT_MAX_IN_FLIGHT);
+        this.urlsToVisit = builder.hostScheduler != null ? builder.hostScheduler : new HostScheduler();
+        this.snapshotFile = builder.snapshotFile;
 
-        // Pages to be visited
-        org.bson.Document urlsToVisit = urlsCollection.find(urlsToVisitFilter).projection(projection).first();
-        if (urlsToVisit != null) {
-            this.urlsToVisit.addAll(urlsToVisit.getList("urls", String.class));
+        if (recrawl) {
+            urlStore.markAllVisitedToVisit();
         }
 
-        // Pages already visited
-        org.bson.Document urlsVisited = urlsCollection.find(urlsVisitedFilter).projection(projection).first();
-        if (urlsVisited != null) {
-            this.urlsVisited.addAll(urlsVisited.getList("urls", String.class));
-            this.urlsVisited.forEach(item -> this.allEncounteredUrls.add(item.hashCode()));
+        // Add all previously encountered urls to their respective collections
+        FrontierSnapshot snapshot = FrontierSnapshot.load(snapshotFile, urlStore, DEPTH, PRIORITY);
+        this.allEncounteredUrls = snapshot.getFingerprints();
+        this.numUrlsVisited = snapshot.getNumVisited();
+        if (leases == null) {
+            snapshot.forEachToVisit((url, fields) -> queueLoadedUrl(url, fields[0], fields[1]));
         }
 
-        queueUrl(initialUrl);
+        // Through the private method, so that no overridable method is called before the crawler is set up
+        queueUrl(builder.initialUrl, 0);
     }
 
     /**
-     * Add an url to be crawled (downloaded) to the collections in memory and the db. The url is only added if it has not
-     * been previously encountered.
+     * Add an url to be crawled (downloaded) to the collections in memory and the db. The url is first rewritten into
+     * its canonical form, if there's a canonicalizer, and is only added if that has not been previously encountered.
+     * Safe to call from multiple threads.
      *
      * @param url the url to add
      * @return <code>true</code> if the url was added successfully;
      * <code>false</code> otherwise.
      */
-    public boolean queueUrl(String url) {
-        boolean issueOccurredAddingAUrl = false;
-        if (!allEncounteredUrls.contains(url.hashCode())) {
-            // Add the url to the 'toVisit' document in db
-            Bson updates = Updates.push("urls", url);
-            UpdateOptions options = new UpdateOptions().upsert(true);
-            boolean dbUpdated = urlsCollection.updateOne(urlsToVisitFilter, updates, options).getModifiedCount() > 0;
+    public synchronized boolean queueUrl(String url) {
+        return queueUrl(url, 0);
+    }
 
-            boolean urlQueuedForVisiting = urlsToVisit.add(url);
-            boolean urlColored = allEncounteredUrls.add(url.hashCode());
-            issueOccurredAddingAUrl = dbUpdated && urlQueuedForVisiting && urlColored;
+    /**
+     * Download a page again, as for one whose body was lost before it was scraped, even though its url was already
+     * visited. It's queued ahead of the others, and downloaded in full even when recrawling. It's only queued in
+     * memory, as the scraper keeps the page to be visited until it gets it back. Safe to call from multiple threads.
+     *
+     * @param url the url the page was asked for by (before any redirects)
+     */
+    public void requeueUrl(String url) {
+        refetchUrls.add(url);
+        urlsToVisit.add(url, HostScheduler.NUM_PRIORITIES - 1);
+    }
+
+    /**
+     * Add the urls found on a page to be crawled, as with {@link #queueUrl(String)}, one link further from the initial
+     * url than the page. Must be called once for every page handed to the scraper, even if no urls were found on it,
+     * as the page's depth is kept until then. Safe to call from multiple threads.
+     *
+     * @param pageUrl the url the page the urls were found on was asked for by (before any redirects)
+     * @param urls    the urls found on the page; nulls are skipped
+     */
+    public void queueUrls(String pageUrl, Collection<String> urls) {
+        int depth = scorer != null ? depthOf(pageUrl) + 1 : 0;
+        synchronized (this) {
+            for (String url : urls) {
+                if (url != null) {
+                    queueUrl(url, depth);
+                }
+            }
         }
-        return issueOccurredAddingAUrl;
     }
 
     /**
-     * Process the next page: download the next url on the queue and queue it into the scraper provided.
+     * Add an url to be crawled at a depth, or count another link to it if it was previously encountered, raising it if
+     * it's still waiting to be downloaded. Must be called with the crawler's lock held.
      *
-     * @param scraperToQueuePagesTo the scraper to queue the urls into
-     * @return the url of the page processed if it is processed successfully; otherwise null.
+     * @return <code>true</code> if the url was added; otherwise <code>false</code>.
+     */
+    private boolean queueUrl(String url, int depth) {
+        if (canonicalizer != null) {
+            url = canonicalizer.canonicalize(url);
+        }
+        if (!allEncounteredUrls.add(UrlFingerprint.of(url))) {
+            FrontierUrl known = scorer != null ? frontierUrls.get(url) : null;
+            if (known != null) {
+                known.inLinks++;
+                urlsToVisit.raise(url, scorer.score(url, known.depth, known.inLinks));
+            }
+            return false;
+        }
+        if (scorer == null) {
+            // Add the url's document to the db as to be visited. If the frontier is shared, it's left there to be
+            // claimed by the node that owns its host (which may be this one).
+            if (leases != null) {
+                urlStore.markToVisit(url, UrlLeases.fieldsFor(url));
+                return true;
+            }
+            urlStore.markToVisit(url);
+            urlsToVisit.add(url);
+            return true;
+        }
+        int priority = scorer.score(url, depth, 1);
+        org.bson.Document fields = leases != null ? UrlLeases.fieldsFor(url) : new org.bson.Document();
+        urlStore.markToVisit(url, fields.append(DEPTH, depth).append(PRIORITY, priority));
+        if (leases == null) {
+            frontierUrls.put(url, new FrontierUrl(depth));
+            urlsToVisit.add(url, priority);
+        }
+        return true;
+    }
+
+    /**
+     * Queue an url loaded or claimed from the db, with the depth and priority kept in its document (either of which
+     * may be missing, as for urls queued before they were kept). Must be called with the crawler's lock held, or from
+     * the constructor.
+     */
+    private void queueLoadedUrl(String url, Object depth, Object priority) {
+        if (scorer == null) {
+            urlsToVisit.add(url);
+            return;
+        }
+        int urlDepth = depth != null ? Integer.parseInt(depth.toString()) : 0;
+        frontierUrls.put(url, new FrontierUrl(urlDepth));
+        urlsToVisit.add(url, priority != null ? Integer.parseInt(priority.toString()) : scorer.score(url, urlDepth, 1));
+    }
+
+    /**
+     * Get the depth of a page handed to the scraper, letting go of what's kept about it. A page not found in memory,
+     * such as one downloaded before a restart, has its depth read from its document, without the crawler's lock held.
+     */
+    private int depthOf(String pageUrl) {
+        FrontierUrl page;
+        synchronized (this) {
+            page = frontierUrls.remove(pageUrl);
+        }
+        if (page != null) {
+            return page.depth;
+        }
+        org.bson.Document doc = urlStore.getDocument(pageUrl);
+        return doc != null && doc.get(DEPTH) instanceof Number depth ? depth.intValue() : 0;
+    }
+
+    /**
+     * Process the next page: start downloading the next url whose host is ready. Once the download completes the page
+     * is queued into the scraper provided; this happens on the download's own thread, so several pages may be
+     * downloading at once. If no host is ready yet, this waits briefly for one to become ready, but never longer than
+     * a second, so that the caller can get on with other work in the meantime.
+     *
+     * @param scraperToQueuePagesTo the scraper to queue the downloaded pages into
+     * @return the url of the page whose download was started; otherwise null.
      */
     public String processNext(Scraper scraperToQueuePagesTo, boolean displayDownloadLoadingMessage) {
-        // Get the next page and add it to the scraper, removing it from the urlsToVisit queue and db document
-        currentUrl = urlsToVisit.poll();
-
-        if (currentUrl != null) {
-            Bson update = Updates.pull("urls", currentUrl);
-            UpdateOptions options = new UpdateOptions().upsert(false);  // if it doesn't already exist then no need to create a new document
-            urlsCollection.updateOne(urlsToVisitFilter, update, options);
-
-            urlsVisited.add(currentUrl);
-            update = Updates.push("urls", currentUrl);
-            options = new UpdateOptions().upsert(true);  // here, we want to create a new document if it doesn't already exist
-            urlsCollection.updateOne(urlsVisitedFilter, update, options);
-
-            // Download the page and queue it into the scraper, waiting if not enough time has elapsed since the last download.
-            try {
-                long elapsedTimeSinceLastDownload = System.currentTimeMillis() - lastDownloadEndTime;
-                long timeToWait = Long.max(lastDownloadDuration * 2, DEFAULT_DOWNLOAD_INTERVAL_MS) - elapsedTimeSinceLastDownload;
-                if (timeToWait > 0) {
-                    if (displayDownloadLoadingMessage) {
-                        System.out.println("Crawler is waiting " + (timeToWait / 1000) + " seconds before downloading the next page...");
-                    }
-                    Thread.sleep(timeToWait);
+        try {
+            if (leases != null) {
+                claimUrls();
+            }
+            // Get the next page and add it to the scraper, removing it from the urlsToVisit queue and marking it
+            // visited in the db
+            currentUrl = urlsToVisit.poll();
+            if (currentUrl == null) {
+                long timeToWait = urlsToVisit.getDelayUntilNextReadyMs();
+                if (displayDownloadLoadingMessage && timeToWait != Long.MAX_VALUE) {
+                    System.out.println("Crawler is waiting " + (timeToWait / 1000)
+                            + " seconds before the next host is ready...");
+                }
+                urlsToVisit.awaitReady(AWAIT_READY_TIMEOUT_MS);
+                currentUrl = urlsToVisit.poll();
+                if (currentUrl == null) {
+                    return null;
                 }
+            }
 
-                long startTime = System.currentTimeMillis();
-                Document page = Jsoup.connect(currentUrl).get();
-                lastDownloadEndTime = System.currentTimeMillis();
-                lastDownloadDuration = lastDownloadEndTime - startTime;
+            synchronized (this) {
+                numUrlsVisited++;
+            }
 
-                if (scraperToQueuePagesTo.queuePage(page)) {
-                    return currentUrl;
+            // Start the download. Its host won't be handed out again until the download completes and the host's
+            // politeness delay has elapsed. Queueing the page into the scraper may block if the scraper is behind,
+            // which in turn holds up further downloads.
+            String url = currentUrl;
+            boolean refetch = refetchUrls.remove(url);
+            PageValidators previous = recrawl && !refetch
+                    ? PageValidators.fromDocument(urlStore.getDocument(url)) : null;
+            long startTime = System.currentTimeMillis();
+            fetchEngine.fetch(url, previous, (page, e) -> {
+                urlsToVisit.complete(url, System.currentTimeMillis() - startTime);
+                // The url is only marked visited in the db once its download completes, and after the page is handed
+                // to the scraper, along with what to check the page against the next time it's crawled. That way a
+                // download cut short by a restart is tried again, and a page is never lost between the two.
+                // Note that in the case of an inaccessible page or invalid url, the crawler will count the page as
+                // visited, (because it was already removed from the memory collections). But since it can't actually
+                // download it, it will not be given to the scraper.
+                if (page == null) {
+                    urlStore.markVisited(url);
+                    forget(url);
+                } else {
+                    if (page.isUnchanged()) {
+                        numPagesUnchanged.incrementAndGet();
+                        forget(url);
+                    } else {
+                        scraperToQueuePagesTo.queuePage(page, recrawl);
+                    }
+                    urlStore.markVisited(url, page.getValidators().toDocument());
                 }
-            } catch (IOException | InterruptedException e) {
-                // Note that in the case of an inaccessible page or invalid url, the crawler will count the page as visited,
-                // (because it was already removed from the memory collections and db). But since it can't actually download
-                // it, it will not be given to the scraper.
-                return null;
-            }
+                // Its lease is kept, and renewed, until the visited mark is written
+                leasedUrls.remove(url);
+            });
+            return url;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         }
-        return null;
     }
 
     /**
-     * Indicate if the crawler currently has at least one more page left to visit.
+     * Indicate if the crawler currently has at least one more page left to visit, or is still downloading one.
      *
-     * @return <code>true</code> if the crawler currently has at least one more page left to visit; otherwise <code>false</code>.
+     * @return <code>true</code> if the crawler currently has at least one more page left to visit or download;
+     * otherwise <code>false</code>.
      */
     public boolean hasNext() {
-        return !urlsToVisit.isEmpty();
+        return !urlsToVisit.isIdle() || fetchEngine.getNumInFlight() > 0
+                || (leases != null && leases.hasUrlsToVisit(urlStore));
     }
 
     /**
@@ -157,8 +436,93 @@ public class Crawler {
      *
      * @return the number of urls visited
      */
-    public int getNumUrlsVisited() {
-        return urlsVisited.size();
+    public synchronized int getNumUrlsVisited() {
+        return numUrlsVisited;
+    }
+
+    /**
+     * Claim more urls to visit from the shared frontier, enough to keep a batch queued. An url this node already
+     * holds (whose lease it let lapse) isn't queued twice.
+     */
+    private void claimUrls() {
+        for (org.bson.Document doc : leases.claim(leases.getBatchSize() - urlsToVisit.size(), DEPTH, PRIORITY)) {
+            String url = doc.getString("_id");
+            if (leasedUrls.add(url)) {
+                synchronized (this) {
+                    queueLoadedUrl(url, doc.get(DEPTH), doc.get(PRIORITY));
+                }
+            }
+        }
+    }
+
+    /**
+     * Let go of what's kept about an url whose page won't be handed to the scraper.
+     */
+    private synchronized void forget(String url) {
+        frontierUrls.remove(url);
+    }
+
+    /**
+     * Save the urls encountered so far to the snapshot file, to be loaded from the next time instead of the db. Does
+     * nothing if the crawler wasn't given a snapshot file. Safe to call while crawling.
+     *
+     * @return <code>true</code> if the snapshot was saved; otherwise <code>false</code>.
+     */
+    public boolean saveSnapshot() {
+        if (snapshotFile == null) {
+            return false;
+        }
+        long startedAt = System.currentTimeMillis();
+        FingerprintSet fingerprints;
+        synchronized (this) {
+            fingerprints = allEncounteredUrls.copy();
+        }
+        return FrontierSnapshot.save(snapshotFile, startedAt, fingerprints, urlStore, DEPTH, PRIORITY);
+    }
+
+    /**
+     * Get the memory taken up by the fingerprints of all urls encountered
+     *
+     * @return the size of the set of encountered urls in bytes
+     */
+    public synchronized long getEncounteredUrlsMemoryBytes() {
+        return allEncounteredUrls.getMemoryBytes();
+    }
+
+    /**
+     * Get the expected number of urls that were not queued because their fingerprint collided with that of another url
+     *
+     * @return the expected number of urls wrongly dropped
+     */
+    public synchronized double getExpectedFalseDrops() {
+        return allEncounteredUrls.getExpectedFalseDrops();
+    }
+
+    /**
+     * Get the canonicalizer the urls queued are rewritten by
+     *
+     * @return the canonicalizer, or null if the urls are queued as they are
+     */
+    public UrlCanonicalizer getCanonicalizer() {
+        return canonicalizer;
+    }
+
+    /**
+     * Get the number of pages currently being downloaded
+     *
+     * @return the number of pages currently being downloaded
+     */
+    public int getNumDownloadsInFlight() {
+        return fetchEngine.getNumInFlight();
+    }
+
+    /**
+     * Get the number of pages found to be unchanged since they were last crawled, and so not given to the scraper
+     *
+     * @return the number of unchanged pages
+     */
+    public int getNumPagesUnchanged() {
+        return numPagesUnchanged.get();
     }
 
     /**
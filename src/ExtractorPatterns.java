@@ -0,0 +1,106 @@
+// 10.15.2026
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The compiled regex patterns the scraper extracts data with. The patterns are compiled once per domain (the url
+ * patterns depend on it) and shared by every scraper of that domain. Compiled patterns are immutable, so any number of
+ * threads may use them at once, each with its own <code>Matcher</code>.
+ */
+public final class ExtractorPatterns {
+    private static final ConcurrentHashMap<String, ExtractorPatterns> BY_DOMAIN = new ConcurrentHashMap<>();
+
+    // Address:
+    // group 1 - house number,
+    // group 2 - street,
+    // group 3 - city,
+    // group 4 - state (code or name),
+    // group 5 - 5 digit zip code,
+    // group 6 - 4 digit zip code suffix, if applicable
+    // "(?i)(\\w+(?:-\\w+)?) ((?:\\d*[a-z]+\\.? )*[a-z]+\\.?)\\s((?:[a-z]+ )*[a-z]+), " +
+    //         "([A-Z]{2}) (\\d{5})(?:-(\\d{4}))?";
+    private static final Pattern ADDRESS = Pattern.compile(
+            "(?i)(\\w+(?:-\\w+)?) ((?:\\d*[a-z]+\\.? )*[a-z]+\\.?)\\s((?:[a-z]+ )*[a-z]+), " +
+            "([A-Z]{2}|[a-z]+(?: [a-z]+)) (\\d{5})(?:-(\\d{4}))?");
+
+    // UsDate:
+    // group 1 - Month,
+    // group 2 - day,
+    // group 3 - year
+    private static final Pattern US_DATE = Pattern.compile(
+            "((?i)JAN(?:\\.|UARY)|FEB(?:\\.|RUARY)|MAR(?:\\.|CH)|APR(?:\\.|IL)|MAY|JUNE|JULY|" +
+            "AUG(?:\\.|UST)|SEPT(?:\\.|EMBER)|OCT(?:\\.|OBER)|NOV(?:\\.|EMBER)|DEC(?:\\.|EMBER)|0?[1-9]|1[0-2])" +
+            "(?:\\s|\\s?[/\\.]\\s?)(0?[1-9]|[1-2][1-9]|3[0-1])(?:\\s|\\s?[/\\.,]\\s?)(\\d{4})");
+
+    private static final Pattern COURSE_CODE = Pattern.compile("(?<!\\w)[A-Z]{4}\\s\\d{3}(?!\\w)");
+
+    private static final Pattern EMAIL = Pattern.compile("^(mailto:)(.*)");
+    private static final Pattern PHONE_NUMBER = Pattern.compile("^(tel:)(.*)");
+
+    private final Map<Scraper.DataType, Pattern> textPatterns;
+    private final Pattern internalUrl;
+    private final Pattern externalUrl;
+
+    private ExtractorPatterns(String domain) {
+        String domainRegex = domain.replace(".", "\\.");
+        this.internalUrl = Pattern.compile("https?://((\\w|\\d)+\\.)*" + domainRegex + ".*");
+        this.externalUrl = Pattern.compile("https?://(?!" + domainRegex + ")+(\\w|\\d)+\\.(?!" + domainRegex + ").*");
+
+        EnumMap<Scraper.DataType, Pattern> textPatterns = new EnumMap<>(Scraper.DataType.class);
+        textPatterns.put(Scraper.DataType.Address, ADDRESS);
+        textPatterns.put(Scraper.DataType.UsDate, US_DATE);
+        textPatterns.put(Scraper.DataType.CourseCode, COURSE_CODE);
+        this.textPatterns = Collections.unmodifiableMap(textPatterns);
+    }
+
+    /**
+     * Get the patterns for the given domain, compiling them the first time the domain is asked for.
+     *
+     * @param domain used to differentiate between internal and external urls
+     * @return the domain's patterns
+     */
+    public static ExtractorPatterns forDomain(String domain) {
+        return BY_DOMAIN.computeIfAbsent(domain, ExtractorPatterns::new);
+    }
+
+    /**
+     * Get the patterns that are matched against the text of a page, by the DataType each one extracts
+     *
+     * @return an unmodifiable map of each text DataType to its pattern
+     */
+    public Map<Scraper.DataType, Pattern> getTextPatterns() {
+        return textPatterns;
+    }
+
+    /**
+     * @return the pattern matching urls within the domain
+     */
+    public Pattern getInternalUrl() {
+        return internalUrl;
+    }
+
+    /**
+     * @return the pattern matching urls outside the domain
+     */
+    public Pattern getExternalUrl() {
+        return externalUrl;
+    }
+
+    /**
+     * @return the pattern matching <code>mailto:</code> links
+     */
+    public Pattern getEmail() {
+        return EMAIL;
+    }
+
+    /**
+     * @return the pattern matching <code>tel:</code> links
+     */
+    public Pattern getPhoneNumber() {
+        return PHONE_NUMBER;
+    }
+}
@@ -0,0 +1,301 @@
+// 10.15.2026
+
+import org.jsoup.UnsupportedMimeTypeException;
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * The fetch engine downloads pages concurrently, each on its own virtual thread. At most a fixed number of downloads
+ * are in flight at once; callers asking for more wait until one of the running downloads completes. Pages are handed
+ * over unparsed, as {@link PageHandle}s. The HTTP requests themselves are made by a {@link Fetcher}, shared by all the
+ * downloads.
+ */
+public class FetchEngine implements AutoCloseable {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    private final ExecutorService executor;
+    private final Semaphore inFlightPermits;
+    private final int maxInFlight;
+    private final AtomicInteger numInFlight = new AtomicInteger();
+    private final AtomicLong numTruncated = new AtomicLong();
+    private final AtomicLong numAborted = new AtomicLong();
+    private final AtomicLong numArchiveFailures = new AtomicLong();
+    private final Fetcher fetcher;
+    private final PageStore pageStore;
+    private final WarcWriter archive;
+    private final Metrics.Histogram fetchSeconds;  // null if there are no metrics to record
+    private final Metrics.Counter fetches;
+
+    /**
+     * @param maxInFlight the maximum number of downloads that may run at the same time
+     */
+    public FetchEngine(int maxInFlight) {
+        this(maxInFlight, null);
+    }
+
+    /**
+     * @param maxInFlight the maximum number of downloads that may run at the same time
+     * @param pageStore   the store to keep the downloaded bodies in, or null to keep them in memory with their handles
+     */
+    public FetchEngine(int maxInFlight, PageStore pageStore) {
+        this(maxInFlight, pageStore, null);
+    }
+
+    /**
+     * @param maxInFlight the maximum number of downloads that may run at the same time
+     * @param pageStore   the store to keep the downloaded bodies in, or null to keep them in memory with their handles
+     * @param archive     the archive to write every fetched request and response to, or null to not archive them
+     */
+    public FetchEngine(int maxInFlight, PageStore pageStore, WarcWriter archive) {
+        this(maxInFlight, new JsoupFetcher(), pageStore, archive);
+    }
+
+    /**
+     * @param maxInFlight the maximum number of downloads that may run at the same time
+     * @param fetcher     the fetcher to make the requests with. It's closed when the engine is.
+     * @param pageStore   the store to keep the downloaded bodies in, or null to keep them in memory with their handles
+     * @param archive     the archive to write every fetched request and response to, or null to not archive them
+     */
+    public FetchEngine(int maxInFlight, Fetcher fetcher, PageStore pageStore, WarcWriter archive) {
+        this(maxInFlight, fetcher, pageStore, archive, null);
+    }
+
+    /**
+     * @param maxInFlight the maximum number of downloads that may run at the same time
+     * @param fetcher     the fetcher to make the requests with. It's closed when the engine is.
+     * @param pageStore   the store to keep the downloaded bodies in, or null to keep them in memory with their handles
+     * @param archive     the archive to write every fetched request and response to, or null to not archive them
+     * @param metrics     the metrics to record each download's latency (per host) and result in, or null to not record
+     *                    them
+     */
+    public FetchEngine(int maxInFlight, Fetcher fetcher, PageStore pageStore, WarcWriter archive, Metrics metrics) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1, was " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        this.fetcher = fetcher;
+        this.pageStore = pageStore;
+        this.archive = archive;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.fetchSeconds = metrics != null ? metrics.histogram("crawler_fetch_seconds",
+                "Time taken to download a page, until its body is read, by host.", "host") : null;
+        this.fetches = metrics != null ? metrics.counter("crawler_fetches_total",
+                "Pages downloaded, by result: ok, unchanged, aborted (not HTML, or too slow) or error.", "result")
+                : null;
+    }
+
+    /**
+     * Start downloading the page at the given url. If the in-flight limit has been reached this waits until a slot
+     * frees up before starting the download. The callback runs on the download's thread while it still holds its slot,
+     * so a consumer that can't keep up (for example one putting pages into a full queue) holds up new downloads too.
+     *
+     * @param url        the url of the page to download
+     * @param onComplete called with the downloaded page, or with the error if the page couldn't be downloaded
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    public void fetch(String url, BiConsumer<PageHandle, IOException> onComplete) throws InterruptedException {
+        fetch(url, null, onComplete);
+    }
+
+    /**
+     * Start downloading the page at the given url, unless it's unchanged since it was last fetched. Works like
+     * {@link #fetch(String, BiConsumer)}, but if the page is unchanged the callback is given a handle that
+     * {@link PageHandle#isUnchanged() is unchanged} instead of the page.
+     *
+     * @param url        the url of the page to download
+     * @param previous   the validators of the last version of the page fetched, or null to download it regardless
+     * @param onComplete called with the downloaded page, or with the error if the page couldn't be downloaded
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    public void fetch(String url, PageValidators previous, BiConsumer<PageHandle, IOException> onComplete)
+            throws InterruptedException {
+        inFlightPermits.acquire();
+        numInFlight.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    PageHandle page = null;
+                    IOException error = null;
+                    String result;
+                    long start = System.nanoTime();
+                    try {
+                        FetchResponse response = fetcher.fetch(url, conditionalHeaders(previous));
+                        if (fetchSeconds != null) {
+                            fetchSeconds.observeSince(start, HostScheduler.hostOf(url));
+                        }
+                        if (response.isTruncated()) {
+                            numTruncated.incrementAndGet();
+                        }
+                        page = toPage(url, response, pageStore, archive, numArchiveFailures, previous);
+                        result = page.isUnchanged() ? "unchanged" : "ok";
+                    } catch (UnsupportedMimeTypeException | HttpTimeoutException e) {
+                        numAborted.incrementAndGet();
+                        error = e;
+                        result = "aborted";
+                    } catch (IOException e) {
+                        error = e;
+                        result = "error";
+                    }
+                    if (fetches != null) {
+                        fetches.inc(result);
+                    }
+                    onComplete.accept(page, error);
+                } finally {
+                    releaseSlot();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            releaseSlot();
+            throw e;
+        }
+    }
+
+    /**
+     * Download a page without parsing it, archiving the request and response. Error statuses and non-HTML content
+     * types fail with an <code>IOException</code>, and aren't archived. A page that can't be archived is still
+     * returned; the error is only reported.
+     * <p>
+     * If the validators of the last version fetched are given, the request is made conditional on the page having
+     * changed since. A <code>304 Not Modified</code> response, or a body with the same hash as before, gives back a
+     * handle that {@link PageHandle#isUnchanged() is unchanged}.
+     *
+     * @param fetcher   the fetcher to make the request with
+     * @param url       the url of the page to download
+     * @param pageStore the store to put the page's body in, or null to keep it in memory with the handle
+     * @param archive   the archive to write the request and response to, or null to not archive them
+     * @param previous  the validators of the last version of the page fetched, or null to download it regardless
+     * @return the downloaded page
+     * @throws IOException if the page couldn't be downloaded or stored
+     */
+    public static PageHandle download(Fetcher fetcher, String url, PageStore pageStore, WarcWriter archive,
+                                      PageValidators previous) throws IOException {
+        return toPage(url, fetcher.fetch(url, conditionalHeaders(previous)), pageStore, archive, null, previous);
+    }
+
+    /**
+     * Get the headers that make a request conditional on the page having changed since the given version.
+     */
+    private static Map<String, String> conditionalHeaders(PageValidators previous) {
+        Map<String, String> requestHeaders = new LinkedHashMap<>();
+        if (previous != null && previous.getEtag() != null) {
+            requestHeaders.put("If-None-Match", previous.getEtag());
+        }
+        if (previous != null && previous.getLastModified() != null) {
+            requestHeaders.put("If-Modified-Since", previous.getLastModified());
+        }
+        return requestHeaders;
+    }
+
+    /**
+     * Archive and store a page's response, and create its handle. A response that can't be archived is reported and
+     * counted in <code>archiveFailures</code> (if given), and its page handed on regardless.
+     */
+    private static PageHandle toPage(String requestedUrl, FetchResponse response, PageStore pageStore,
+                                     WarcWriter archive, AtomicLong archiveFailures, PageValidators previous)
+            throws IOException {
+        String finalUrl = response.getUrl();
+        byte[] body = response.getBody();
+        if (archive != null) {
+            try {
+                archive.writeFetch(finalUrl, response.getMethod(), response.getRequestHeaders(),
+                        response.getStatusCode(), response.getStatusMessage(), response.getHeaders(), body);
+            } catch (IOException e) {
+                // Failing the fetch would lose the page from the crawl, as its url is still marked visited
+                System.out.println("Error archiving " + finalUrl + " - page not archived. " + e.getMessage());
+                if (archiveFailures != null) {
+                    archiveFailures.incrementAndGet();
+                }
+            }
+        }
+        if (response.getStatusCode() == HTTP_NOT_MODIFIED) {
+            return PageHandle.unchanged(finalUrl, requestedUrl, previous);
+        }
+
+        String contentHash = pageStore != null ? pageStore.put(body) : PageStore.hashOf(body);
+        PageValidators validators = new PageValidators(response.header("ETag"), response.header("Last-Modified"),
+                contentHash);
+        if (previous != null && contentHash.equals(previous.getContentHash())) {
+            if (pageStore != null) {
+                pageStore.release(contentHash);  // nothing will scrape it
+            }
+            return PageHandle.unchanged(finalUrl, requestedUrl, validators);
+        }
+        if (pageStore == null) {
+            return PageHandle.fromBody(finalUrl, requestedUrl, body, response.charset(), validators);
+        }
+        return PageHandle.fromStore(finalUrl, requestedUrl, pageStore, contentHash, response.charset(), validators);
+    }
+
+    /**
+     * Free up a download slot.
+     */
+    private void releaseSlot() {
+        numInFlight.decrementAndGet();
+        inFlightPermits.release();
+    }
+
+    /**
+     * Get the number of downloads currently running
+     *
+     * @return the number of downloads currently running
+     */
+    public int getNumInFlight() {
+        return numInFlight.get();
+    }
+
+    /**
+     * Get the number of pages whose bodies were cut off at the fetcher's maximum body size. They're still scraped, as
+     * far as they go.
+     *
+     * @return the number of truncated downloads
+     */
+    public long getNumTruncated() {
+        return numTruncated.get();
+    }
+
+    /**
+     * Get the number of downloads abandoned before their bodies were read in full, because they weren't HTML or
+     * took too long to arrive
+     *
+     * @return the number of aborted downloads
+     */
+    public long getNumAborted() {
+        return numAborted.get();
+    }
+
+    /**
+     * Get the number of downloaded pages whose request and response couldn't be written to the archive. The pages
+     * themselves were still handed on.
+     *
+     * @return the number of pages not archived
+     */
+    public long getNumArchiveFailures() {
+        return numArchiveFailures.get();
+    }
+
+    /**
+     * Get the maximum number of downloads that may run at the same time
+     *
+     * @return the in-flight limit
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Stop accepting new downloads and wait for the running ones to finish, then close the fetcher.
+     */
+    @Override
+    public void close() {
+        executor.close();
+        fetcher.close();
+    }
+}
@@ -0,0 +1,107 @@
+// 10.15.2026
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A page's HTTP response as returned by a {@link Fetcher}, together with the request that was sent for it, so that
+ * both can be archived.
+ */
+public final class FetchResponse {
+    private static final Pattern CHARSET = Pattern.compile("(?i)\\bcharset=\\s*\"?([^\\s;\"]+)");
+
+    private final String url;
+    private final String method;
+    private final Map<String, String> requestHeaders;
+    private final int statusCode;
+    private final String statusMessage;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+    private final boolean truncated;
+
+    /**
+     * @param url            the url the response came from (after any redirects)
+     * @param method         the request's method
+     * @param requestHeaders the headers the request was sent with
+     * @param statusCode     the response's status code
+     * @param statusMessage  the response's status message, which may be empty
+     * @param headers        the response's headers
+     * @param body           the response's (decoded) body
+     * @param truncated      <code>true</code> if the body was cut off at the fetcher's maximum body size; otherwise
+     *                       <code>false</code>.
+     */
+    public FetchResponse(String url, String method, Map<String, String> requestHeaders, int statusCode,
+                         String statusMessage, Map<String, List<String>> headers, byte[] body, boolean truncated) {
+        this.url = url;
+        this.method = method;
+        this.requestHeaders = requestHeaders;
+        this.statusCode = statusCode;
+        this.statusMessage = statusMessage;
+        this.headers = headers;
+        this.body = body;
+        this.truncated = truncated;
+    }
+
+    /**
+     * Get the first value of a response header, ignoring the case of its name
+     *
+     * @param name the header's name
+     * @return the header's first value, or null if the response doesn't have it
+     */
+    public String header(String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the charset declared in the response's <code>Content-Type</code>
+     *
+     * @return the declared charset, or null if none was declared
+     */
+    public String charset() {
+        String contentType = header("Content-Type");
+        if (contentType == null) {
+            return null;
+        }
+        Matcher matcher = CHARSET.matcher(contentType);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public Map<String, String> getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
@@ -0,0 +1,53 @@
+// 10.15.2026
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Performs the HTTP GET of a page and hands back the raw response; parsing is left to the caller. As with
+ * <code>Jsoup.connect(url).get()</code>, redirects are followed, and error statuses and non-HTML content types fail
+ * with an <code>IOException</code>. The content type is checked before the body is read, so the download of a page
+ * that isn't HTML is abandoned without reading its body. A body over the fetcher's maximum size is cut off there, and
+ * the response marked as truncated.
+ * <p>
+ * Implementations are thread-safe, so one fetcher is shared by all of a {@link FetchEngine}'s downloads.
+ */
+public interface Fetcher extends AutoCloseable {
+    long DEFAULT_MAX_BODY_BYTES = 10L * 1024 * 1024;
+
+    /**
+     * Fetch a page, waiting for the whole response.
+     *
+     * @param url            the url of the page
+     * @param requestHeaders extra headers to send with the request
+     * @return the response
+     * @throws IOException if the page couldn't be fetched, or the response is an error or isn't HTML
+     */
+    FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException;
+
+    /**
+     * Start fetching a page without waiting for the response.
+     *
+     * @param url            the url of the page
+     * @param requestHeaders extra headers to send with the request
+     * @return a future completed with the response, or exceptionally with the <code>IOException</code> it failed with
+     */
+    default CompletableFuture<FetchResponse> fetchAsync(String url, Map<String, String> requestHeaders) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return fetch(url, requestHeaders);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Release any connections the fetcher holds.
+     */
+    @Override
+    default void close() {
+    }
+}
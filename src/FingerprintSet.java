@@ -0,0 +1,180 @@
+// 10.15.2026
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A set of 64-bit url fingerprints (see {@link UrlFingerprint}), kept in a single primitive <code>long[]</code> with
+ * open addressing and linear probing. Each fingerprint takes 8 bytes, times the slack from the load factor, instead of
+ * the ~40 bytes of a boxed <code>Integer</code> in a <code>HashSet</code>.
+ * <p>
+ * Not thread-safe; callers synchronize access themselves.
+ */
+public class FingerprintSet {
+    private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+    private static final long EMPTY = 0;  // a fingerprint of 0 is tracked separately by containsZero
+
+    private long[] table;
+    private int size = 0;
+    private boolean containsZero = false;
+
+    public FingerprintSet() {
+        this.table = new long[DEFAULT_INITIAL_CAPACITY];
+    }
+
+    private FingerprintSet(long[] table, int size, boolean containsZero) {
+        this.table = table;
+        this.size = size;
+        this.containsZero = containsZero;
+    }
+
+    /**
+     * Add a fingerprint to the set.
+     *
+     * @param fingerprint the fingerprint
+     * @return <code>true</code> if the fingerprint was not already in the set; otherwise <code>false</code>.
+     */
+    public boolean add(long fingerprint) {
+        if (fingerprint == EMPTY) {
+            boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+        int mask = table.length - 1;
+        int slot = indexFor(fingerprint, mask);
+        while (table[slot] != EMPTY) {
+            if (table[slot] == fingerprint) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = fingerprint;
+        if (++size > table.length * MAX_LOAD_FACTOR) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * Indicate if the fingerprint is in the set.
+     *
+     * @param fingerprint the fingerprint
+     * @return <code>true</code> if the fingerprint is in the set; otherwise <code>false</code>.
+     */
+    public boolean contains(long fingerprint) {
+        if (fingerprint == EMPTY) {
+            return containsZero;
+        }
+        int mask = table.length - 1;
+        for (int slot = indexFor(fingerprint, mask); table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of fingerprints in the set
+     *
+     * @return the number of fingerprints
+     */
+    public int size() {
+        return size + (containsZero ? 1 : 0);
+    }
+
+    /**
+     * Get the memory taken up by the set's table
+     *
+     * @return the size of the set in bytes
+     */
+    public long getMemoryBytes() {
+        return table.length * 8L;
+    }
+
+    /**
+     * Get the expected number of distinct urls that were dropped so far because their fingerprint collided with one
+     * already in the set.
+     *
+     * @return the expected number of wrongly dropped urls
+     */
+    public double getExpectedFalseDrops() {
+        return UrlFingerprint.expectedFalseDrops(size());
+    }
+
+    /**
+     * Get a copy of the set, e.g. to write out while this one keeps being added to.
+     *
+     * @return the copy
+     */
+    public FingerprintSet copy() {
+        return new FingerprintSet(table.clone(), size, containsZero);
+    }
+
+    /**
+     * Write the set's table as it is, so that it can be read back by {@link #readFrom} without rehashing a single
+     * fingerprint.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the set can't be written
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeBoolean(containsZero);
+        out.writeInt(size);
+        out.writeInt(table.length);
+        ByteBuffer chunk = ByteBuffer.allocate(8 * 1024);
+        for (int i = 0; i < table.length; ) {
+            chunk.clear();
+            for (; i < table.length && chunk.hasRemaining(); i++) {
+                chunk.putLong(table[i]);
+            }
+            out.write(chunk.array(), 0, chunk.position());
+        }
+    }
+
+    /**
+     * Read a set written by {@link #writeTo}, copying its table straight out of the buffer (which may be a file mapped
+     * into memory).
+     *
+     * @param buffer the buffer to read from, positioned at the start of the set. It's left positioned after it.
+     * @return the set
+     * @throws IOException if the buffer doesn't hold a valid set
+     */
+    public static FingerprintSet readFrom(ByteBuffer buffer) throws IOException {
+        boolean containsZero = buffer.get() != 0;
+        int size = buffer.getInt();
+        int capacity = buffer.getInt();
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1 || size < 0 || size > capacity * MAX_LOAD_FACTOR
+                || (long) capacity * 8 > buffer.remaining()) {
+            throw new IOException("Invalid fingerprint table (" + size + " fingerprints in " + capacity + " slots)");
+        }
+        long[] table = new long[capacity];
+        buffer.asLongBuffer().get(table);
+        buffer.position(buffer.position() + capacity * 8);
+        return new FingerprintSet(table, size, containsZero);
+    }
+
+    private void resize() {
+        long[] oldTable = table;
+        table = new long[oldTable.length * 2];
+        int mask = table.length - 1;
+        for (long fingerprint : oldTable) {
+            if (fingerprint != EMPTY) {
+                int slot = indexFor(fingerprint, mask);
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = fingerprint;
+            }
+        }
+    }
+
+    /**
+     * The fingerprints are already well mixed, so the high bits are folded into the low ones and used directly.
+     */
+    private static int indexFor(long fingerprint, int mask) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,302 @@
+// 10.15.2026
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The state a {@link Crawler} or {@link Scraper} starts from: the fingerprints of every url encountered (see
+ * {@link FingerprintSet}) and the frontier, the urls still waiting to be visited along with the fields of their
+ * documents that are needed to visit them.
+ * <p>
+ * Loading it from the db means streaming every url in the {@link UrlStore}, visited or not, and hashing each one, so
+ * startup time grows with the size of the crawl. Instead it can be saved now and then to a compact binary file: the
+ * fingerprint table as it is in memory, so that it's copied straight out of the file (mapped into memory) rather than
+ * rebuilt, followed by the frontier. On restart the file is loaded and brought up to date by replaying only the urls
+ * written since it was saved, read by the store's <code>updatedAt</code> index. If the file is missing, damaged or was
+ * saved with other fields, everything is loaded from the db as before.
+ * <p>
+ * The file starts with a magic number and a version, and ends with a CRC-32 of everything before it. It's written to a
+ * temporary file first, then moved over the previous one, so a crash while saving leaves the previous file in place.
+ * Files larger than 2 GB (a table of some 130 million fingerprints) can't be mapped in one piece and are ignored.
+ */
+public class FrontierSnapshot {
+    private static final int MAGIC = 0x46524e54;  // "FRNT"
+    private static final int VERSION = 1;
+    // Urls are replayed from a little before the snapshot was started, in case the clock is set back in the meantime
+    public static final long REPLAY_MARGIN_MS = 60 * 1000;
+
+    private final FingerprintSet fingerprints;
+    private final LinkedHashMap<String, String[]> frontier;  // each url to visit, with the values of its fields
+    private final boolean fromFile;
+    private final long numUrlsReplayed;
+
+    private FrontierSnapshot(FingerprintSet fingerprints, LinkedHashMap<String, String[]> frontier, boolean fromFile,
+                             long numUrlsReplayed) {
+        this.fingerprints = fingerprints;
+        this.frontier = frontier;
+        this.fromFile = fromFile;
+        this.numUrlsReplayed = numUrlsReplayed;
+    }
+
+    /**
+     * Load the state of the urls in a store: from the snapshot file, brought up to date with the urls written since it
+     * was saved, or, if there's no usable file, from the store alone.
+     *
+     * @param file   the snapshot file, or null to load from the store alone
+     * @param store  the store holding the urls
+     * @param fields the fields of each url's document to keep with the urls to visit
+     * @return the loaded state
+     */
+    public static FrontierSnapshot load(Path file, UrlStore store, String... fields) {
+        long start = System.nanoTime();
+        FrontierSnapshot snapshot = file != null ? loadFile(file, store, fields) : null;
+        if (snapshot == null) {
+            snapshot = loadStore(store, fields);
+        }
+        if (file != null) {
+            System.out.println("Loaded " + snapshot.fingerprints.size() + " urls (" + snapshot.frontier.size()
+                    + " to visit) " + (snapshot.fromFile ? "from " + file.getFileName() + ", replaying "
+                    + snapshot.numUrlsReplayed + " written since," : "from the db") + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms.");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Save the state of the urls in a store. The fingerprints are those held in memory; the frontier is read from the
+     * store, as the urls being downloaded or scraped at the time are no longer queued in memory but still wait to be
+     * visited in the db. Every pending write is flushed first, so every fingerprint saved belongs to an url in the db.
+     *
+     * @param file         the snapshot file
+     * @param startedAt    the time, in milliseconds since the epoch, from before the fingerprints were copied. Urls
+     *                     written since are replayed when the snapshot is loaded.
+     * @param fingerprints a copy of the fingerprints of every url encountered, taken while no url was being added
+     * @param store        the store holding the urls
+     * @param fields       the fields of each url's document to keep with the urls to visit
+     * @return <code>true</code> if the snapshot was saved; otherwise <code>false</code>, and the previous one is left
+     * in place.
+     */
+    public static boolean save(Path file, long startedAt, FingerprintSet fingerprints, UrlStore store,
+                               String... fields) {
+        if (!store.flushWrites()) {
+            System.out.println("Error saving " + file.getFileName()
+                    + " - url changes are still waiting to be written.");
+            return false;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        try (OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024);
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(fileOut, checksum))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(startedAt);
+            out.writeInt(fields.length);
+            for (String field : fields) {
+                writeString(out, field);
+            }
+            fingerprints.writeTo(out);
+
+            // The number of urls to visit is only known once they're all read, so each one is preceded by a marker
+            // instead, and the last is followed by an end marker
+            IOException[] error = new IOException[1];
+            store.forEachDocument(UrlStore.State.ToVisit, doc -> {
+                if (error[0] != null) {
+                    return;
+                }
+                try {
+                    out.writeBoolean(true);
+                    writeString(out, doc.getString("_id"));
+                    for (String value : valuesOf(doc, fields)) {
+                        writeString(out, value);
+                    }
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+            out.writeBoolean(false);
+            out.flush();
+            new DataOutputStream(fileOut).writeInt((int) checksum.getValue());  // not itself checksummed
+            fileOut.flush();
+        } catch (IOException e) {
+            System.out.println("Error saving " + file.getFileName() + " - previous snapshot kept. " + e.getMessage());
+            return false;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error saving " + file.getFileName() + " - previous snapshot kept. " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Get the fingerprints of every url encountered, visited or not. The set is handed over rather than copied, to be
+     * added to from then on.
+     *
+     * @return the fingerprints
+     */
+    public FingerprintSet getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * Pass each url waiting to be visited, with the values of its fields (in the order they were asked for; null if the
+     * url's document doesn't have one), to the action.
+     *
+     * @param action the action to perform on each url and its field values
+     */
+    public void forEachToVisit(BiConsumer<String, String[]> action) {
+        frontier.forEach(action);
+    }
+
+    /**
+     * Get the number of urls waiting to be visited
+     *
+     * @return the number of urls to visit
+     */
+    public int getNumToVisit() {
+        return frontier.size();
+    }
+
+    /**
+     * Get the number of urls already visited
+     *
+     * @return the number of urls visited
+     */
+    public int getNumVisited() {
+        return fingerprints.size() - frontier.size();
+    }
+
+    /**
+     * Load the snapshot file and replay the urls written since it was saved.
+     *
+     * @return the loaded state, or null if the file is missing or can't be used
+     */
+    private static FrontierSnapshot loadFile(Path file, UrlStore store, String[] fields) {
+        long startedAt;
+        FingerprintSet fingerprints;
+        LinkedHashMap<String, String[]> frontier = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("file is too large to map");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < 4) {
+                throw new IOException("file is truncated");
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(buffer.slice(0, buffer.limit() - 4));
+            if ((int) checksum.getValue() != buffer.getInt(buffer.limit() - 4)) {
+                throw new IOException("checksum doesn't match");
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not a snapshot of this version");
+            }
+            startedAt = buffer.getLong();
+            String[] savedFields = new String[buffer.getInt()];
+            for (int i = 0; i < savedFields.length; i++) {
+                savedFields[i] = readString(buffer);
+            }
+            if (!Arrays.equals(savedFields, fields)) {
+                throw new IOException("saved with the fields " + Arrays.toString(savedFields));
+            }
+            fingerprints = FingerprintSet.readFrom(buffer);
+            while (buffer.get() != 0) {
+                String url = readString(buffer);
+                String[] values = new String[fields.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readString(buffer);
+                }
+                frontier.put(url, values);
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error loading " + file.getFileName() + " - loading from the db instead. "
+                    + e.getMessage());
+            return null;
+        }
+
+        // Each url written since holds its current state, so replaying it is the same however many times it was written
+        long[] numUrlsReplayed = {0};
+        store.forEachChangedSince(startedAt - REPLAY_MARGIN_MS, doc -> {
+            String url = doc.getString("_id");
+            fingerprints.add(UrlFingerprint.of(url));
+            if (UrlStore.State.ToVisit.value.equals(doc.getString(UrlStore.STATE))) {
+                frontier.put(url, valuesOf(doc, fields));
+            } else {
+                frontier.remove(url);
+            }
+            numUrlsReplayed[0]++;
+        });
+        return new FrontierSnapshot(fingerprints, frontier, true, numUrlsReplayed[0]);
+    }
+
+    /**
+     * Load the state from the store alone, streaming every url in it.
+     */
+    private static FrontierSnapshot loadStore(UrlStore store, String[] fields) {
+        FingerprintSet fingerprints = new FingerprintSet();
+        LinkedHashMap<String, String[]> frontier = new LinkedHashMap<>();
+        // Pages to be visited
+        store.forEachDocument(UrlStore.State.ToVisit, doc -> {
+            String url = doc.getString("_id");
+            frontier.put(url, valuesOf(doc, fields));
+            fingerprints.add(UrlFingerprint.of(url));
+        });
+        // Pages already visited
+        store.forEachUrl(UrlStore.State.Visited, url -> fingerprints.add(UrlFingerprint.of(url)));
+        return new FrontierSnapshot(fingerprints, frontier, false, 0);
+    }
+
+    private static String[] valuesOf(org.bson.Document doc, String[] fields) {
+        String[] values = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Object value = doc.get(fields[i]);
+            values[i] = value != null ? value.toString() : null;
+        }
+        return values;
+    }
+
+    /**
+     * Write a string as its length in UTF-8 bytes followed by the bytes, or a length of -1 for null.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("string of invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
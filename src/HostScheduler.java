@@ -0,0 +1,435 @@
+// 10.15.2026
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Holds the urls waiting to be downloaded, grouped by host, and decides which one may be downloaded next. Each host
+ * has its own politeness delay: after a download from a host completes, that host is not used again until
+ * <code>max(2 * lastDownloadDuration, minIntervalMs)</code> has elapsed, and only one download per host runs at a time.
+ * Urls from other hosts are not held up by a slow host. Nothing here ever sleeps; callers either get a ready url
+ * straight away or wait on a condition that is signalled as soon as one may have become ready.
+ * <p>
+ * Each url is queued with a priority, from 0 to <code>NUM_PRIORITIES - 1</code>. A host hands out its urls highest
+ * priority first, and of the hosts that are ready, the one whose best url has the highest priority goes first. Urls of
+ * the same priority go in the order they were queued. Both the urls of a host and the ready hosts are kept in a bucket
+ * per priority, with a bit per non-empty bucket, so adding, raising and taking the next url don't depend on how many
+ * are queued. When an url's priority is raised it's queued again in its new bucket, and its old place is skipped over
+ * when reached.
+ */
+public class HostScheduler {
+    public static final long DEFAULT_MIN_INTERVAL_MS = 10000;
+    public static final int NUM_PRIORITIES = 64;  // one bit of a long per priority
+    public static final int DEFAULT_PRIORITY = NUM_PRIORITIES / 2;
+
+    /**
+     * An url queued, in the bucket of its priority
+     */
+    private static class QueuedUrl {
+        private final String url;
+        private final HostState host;
+        private int priority;  // the bucket it's in; its entries in lower buckets, from before it was raised, are stale
+
+        private QueuedUrl(String url, HostState host, int priority) {
+            this.url = url;
+            this.host = host;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * A host's place in readyHosts. A host that's raised, or taken and filed again later, gets a new one, leaving the
+     * old one stale.
+     */
+    private static class ReadyHost {
+        private final HostState host;
+        private final int priority;
+
+        private ReadyHost(HostState host, int priority) {
+            this.host = host;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Queues of items by priority: a FIFO queue per priority, and a bit set for each one that isn't empty. Rather than
+     * being moved, an item is raised by adding it again at a higher priority, and an item found in a bucket other than
+     * its current priority's is stale and skipped.
+     */
+    private static class PriorityBuckets<T> {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final ArrayDeque<T>[] buckets = new ArrayDeque[NUM_PRIORITIES];  // each created when first needed
+        private long nonEmpty;  // bit i is set if buckets[i] holds any items, stale or not
+
+        private void add(T item, int priority) {
+            if (buckets[priority] == null) {
+                buckets[priority] = new ArrayDeque<>();
+            }
+            buckets[priority].add(item);
+            nonEmpty |= 1L << priority;
+        }
+
+        /**
+         * Get the highest priority that holds a current item, dropping the stale items ahead of it.
+         *
+         * @param priorityOf gives an item's current priority, or -1 if it's no longer queued at all
+         * @return the priority, or -1 if there are no current items
+         */
+        private int top(ToIntFunction<T> priorityOf) {
+            while (nonEmpty != 0) {
+                int priority = 63 - Long.numberOfLeadingZeros(nonEmpty);
+                ArrayDeque<T> bucket = buckets[priority];
+                while (!bucket.isEmpty() && priorityOf.applyAsInt(bucket.peek()) != priority) {
+                    bucket.poll();
+                }
+                if (!bucket.isEmpty()) {
+                    return priority;
+                }
+                nonEmpty &= ~(1L << priority);
+            }
+            return -1;
+        }
+
+        /**
+         * Take the current item of the highest priority.
+         *
+         * @param priorityOf gives an item's current priority, or -1 if it's no longer queued at all
+         * @return the item, or null if there are no current items
+         */
+        private T poll(ToIntFunction<T> priorityOf) {
+            int priority = top(priorityOf);
+            if (priority < 0) {
+                return null;
+            }
+            T item = buckets[priority].poll();
+            if (buckets[priority].isEmpty()) {
+                nonEmpty &= ~(1L << priority);
+            }
+            return item;
+        }
+    }
+
+    /**
+     * The scheduling state of a single host
+     */
+    private static class HostState {
+        private final PriorityBuckets<QueuedUrl> urls = new PriorityBuckets<>();
+        private int numUrls;  // not counting stale entries
+        private long readyAt;  // the earliest time the next download from this host may start
+        private long waitingSince;  // when the host was last put in waitingHosts
+        private boolean downloading;
+        private boolean waiting;  // whether the host is currently in waitingHosts or readyHosts
+        private ReadyHost ready;  // the host's current place in readyHosts, or null if it isn't in it
+
+        private HostState(long readyAt) {
+            this.readyAt = readyAt;
+        }
+    }
+
+    private final long minIntervalMs;
+    private final HashMap<String, HostState> hosts = new HashMap<>();
+    private final HashMap<String, QueuedUrl> queuedUrls = new HashMap<>();  // so that a queued url can be raised
+    // Hosts that have urls queued and no download running, ordered by when they next become ready. Once ready, they're
+    // moved to readyHosts, by the priority of their best url.
+    private final PriorityQueue<HostState> waitingHosts = new PriorityQueue<>(Comparator.comparingLong(h -> h.readyAt));
+    private final PriorityBuckets<ReadyHost> readyHosts = new PriorityBuckets<>();
+    private int numReadyHosts = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();  // signalled when a url is added or a download completes
+    private int numQueuedUrls = 0;
+    private int numDownloading = 0;
+    private final Metrics.Histogram politenessWaitSeconds;  // null if there are no metrics to record
+
+    public HostScheduler() {
+        this(DEFAULT_MIN_INTERVAL_MS);
+    }
+
+    /**
+     * @param minIntervalMs the minimum time between the end of one download from a host and the start of the next
+     */
+    public HostScheduler(long minIntervalMs) {
+        this(minIntervalMs, null);
+    }
+
+    /**
+     * @param minIntervalMs the minimum time between the end of one download from a host and the start of the next
+     * @param metrics       the metrics to record how long each url is held back by its host's politeness delay in, or
+     *                      null to not record it
+     */
+    public HostScheduler(long minIntervalMs, Metrics metrics) {
+        this.minIntervalMs = minIntervalMs;
+        this.politenessWaitSeconds = metrics != null ? metrics.histogram("crawler_politeness_wait_seconds",
+                "Time an url waited for its host's politeness delay once it was next in line for that host.") : null;
+    }
+
+    /**
+     * Queue an url to be downloaded once its host is ready, with the default priority.
+     *
+     * @param url the url to queue
+     */
+    public void add(String url) {
+        add(url, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Queue an url to be downloaded once its host is ready. If the url is already queued, it's raised to the priority
+     * given if that's higher.
+     *
+     * @param url      the url to queue
+     * @param priority the url's priority, from 0 to <code>NUM_PRIORITIES - 1</code> (higher goes first); priorities
+     *                 outside the range are taken as the nearest end of it
+     */
+    public void add(String url, int priority) {
+        priority = Integer.max(0, Integer.min(priority, NUM_PRIORITIES - 1));
+        lock.lock();
+        try {
+            QueuedUrl queued = queuedUrls.get(url);
+            if (queued != null) {
+                raise(queued, priority);
+                return;
+            }
+            String host = hostOf(url);
+            // A host seen for the first time is ready immediately
+            HostState state = hosts.computeIfAbsent(host, h -> new HostState(System.currentTimeMillis()));
+            queued = new QueuedUrl(url, state, priority);
+            queuedUrls.put(url, queued);
+            state.urls.add(queued, priority);
+            state.numUrls++;
+            numQueuedUrls++;
+            if (state.ready != null && priority > state.ready.priority) {
+                fileReady(state, priority);
+            }
+            markWaitingIfIdle(state);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Raise an url already queued to a priority, if it's higher than the url's own.
+     *
+     * @param url      the url
+     * @param priority the url's new priority, from 0 to <code>NUM_PRIORITIES - 1</code>
+     * @return <code>true</code> if the url is queued (whether or not it was raised); otherwise <code>false</code>.
+     */
+    public boolean raise(String url, int priority) {
+        priority = Integer.max(0, Integer.min(priority, NUM_PRIORITIES - 1));
+        lock.lock();
+        try {
+            QueuedUrl queued = queuedUrls.get(url);
+            if (queued == null) {
+                return false;
+            }
+            raise(queued, priority);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the next url whose host is ready to be downloaded from, without waiting. The url's host is marked as
+     * downloading until {@link #complete(String, long)} is called for it.
+     *
+     * @return the next url ready to be downloaded; otherwise null.
+     */
+    public String poll() {
+        lock.lock();
+        try {
+            promoteReadyHosts();
+            ReadyHost ready = readyHosts.poll(r -> r.host.ready == r ? r.priority : -1);
+            if (ready == null) {
+                return null;
+            }
+            HostState next = ready.host;
+            numReadyHosts--;
+            if (politenessWaitSeconds != null) {
+                // Only the part of the wait imposed by the delay; any time after it is spent waiting for a free slot
+                politenessWaitSeconds.observe(Long.max(0, next.readyAt - next.waitingSince) / 1000.0);
+            }
+            next.ready = null;
+            next.waiting = false;
+            next.downloading = true;
+            numDownloading++;
+            numQueuedUrls--;
+            next.numUrls--;
+            QueuedUrl url = next.urls.poll(u -> u.priority);
+            queuedUrls.remove(url.url);
+            return url.url;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until either a host becomes ready, a url is added, a download completes, or the timeout elapses, whichever
+     * happens first.
+     *
+     * @param timeoutMs the maximum time to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitReady(long timeoutMs) throws InterruptedException {
+        lock.lock();
+        try {
+            long delay = getDelayUntilNextReadyMs();
+            if (delay > 0) {
+                changed.await(Long.min(delay, timeoutMs), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record that the download of an url returned by {@link #poll()} has finished (successfully or not), scheduling
+     * its host's next download.
+     *
+     * @param url        the url that was downloaded
+     * @param durationMs how long the download took
+     */
+    public void complete(String url, long durationMs) {
+        lock.lock();
+        try {
+            HostState state = hosts.get(hostOf(url));
+            if (state != null && state.downloading) {
+                state.downloading = false;
+                numDownloading--;
+                state.readyAt = System.currentTimeMillis() + Long.max(durationMs * 2, minIntervalMs);
+                markWaitingIfIdle(state);
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get how long until the next queued url becomes ready to be downloaded.
+     *
+     * @return 0 if a url is ready now, the time in ms until one is ready, or <code>Long.MAX_VALUE</code> if every
+     * host with queued urls is currently downloading (or nothing is queued).
+     */
+    public long getDelayUntilNextReadyMs() {
+        lock.lock();
+        try {
+            if (numReadyHosts > 0) {
+                return 0;
+            }
+            HostState next = waitingHosts.peek();
+            return next == null ? Long.MAX_VALUE : Long.max(0, next.readyAt - System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of urls queued and not yet handed out
+     *
+     * @return the number of urls queued
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return numQueuedUrls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indicate if there are no urls queued and no downloads outstanding.
+     *
+     * @return <code>true</code> if there's nothing queued or downloading; otherwise <code>false</code>.
+     */
+    public boolean isIdle() {
+        lock.lock();
+        try {
+            return numQueuedUrls == 0 && numDownloading == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of distinct hosts seen so far
+     *
+     * @return the number of hosts
+     */
+    public int getNumHosts() {
+        lock.lock();
+        try {
+            return hosts.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put the host back in the waiting queue if it has urls left and isn't currently downloading. Must be called with
+     * the lock held.
+     */
+    private void markWaitingIfIdle(HostState state) {
+        if (!state.waiting && !state.downloading && state.numUrls > 0) {
+            state.waiting = true;
+            state.waitingSince = System.currentTimeMillis();
+            waitingHosts.add(state);
+        }
+    }
+
+    /**
+     * Move the hosts that have become ready from waitingHosts to readyHosts, by the priority of their best url. Must be
+     * called with the lock held.
+     */
+    private void promoteReadyHosts() {
+        long now = System.currentTimeMillis();
+        while (!waitingHosts.isEmpty() && waitingHosts.peek().readyAt <= now) {
+            HostState state = waitingHosts.poll();
+            numReadyHosts++;
+            fileReady(state, state.urls.top(u -> u.priority));
+        }
+    }
+
+    /**
+     * File a host in readyHosts under a priority, leaving any entry it already has there stale. Must be called with the
+     * lock held.
+     */
+    private void fileReady(HostState state, int priority) {
+        state.ready = new ReadyHost(state, priority);
+        readyHosts.add(state.ready, priority);
+    }
+
+    /**
+     * Raise an url to a priority, if it's higher than the url's own, along with its host if the host is ready. Must be
+     * called with the lock held.
+     */
+    private void raise(QueuedUrl queued, int priority) {
+        if (priority <= queued.priority) {
+            return;
+        }
+        queued.priority = priority;
+        queued.host.urls.add(queued, priority);
+        if (queued.host.ready != null && priority > queued.host.ready.priority) {
+            fileReady(queued.host, priority);
+        }
+    }
+
+    /**
+     * Get the host of an url, lowercased. Urls that can't be parsed are all grouped under the empty host.
+     *
+     * @param url the url
+     * @return the url's host
+     */
+    public static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+}
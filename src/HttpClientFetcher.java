@@ -0,0 +1,212 @@
+// 10.15.2026
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Fetches pages with a single shared <code>java.net.http.HttpClient</code>. The client keeps connections alive and
+ * reuses them across fetches from the same host, and speaks HTTP/2 to servers that support it, so concurrent fetches
+ * from one host are multiplexed over one connection. Bodies are requested gzip-compressed and decompressed here.
+ * <p>
+ * Bodies are streamed in rather than buffered by the client: the status and content type are checked as soon as the
+ * headers arrive, and a page that fails either check is abandoned without reading its body. The body is then read up
+ * to the maximum size (counted after decompression, so a small compressed body can't expand without limit) and cut off
+ * there. Reading the body must also finish within the request timeout, so a server trickling out an endless page, or
+ * one that stops sending partway through, can't hold up a download for long: the body's stream is closed at the
+ * deadline from another thread, even while a read is blocked on it, and the fetch fails with an
+ * <code>HttpTimeoutException</code>.
+ * <p>
+ * The body is buffered whole once read, rather than parsed as it streams in. It isn't parsed here at all: the page is
+ * compressed into a {@link PageHandle} and only parsed later by the scraper thread that takes it off the queue, so that
+ * downloads don't hold their slots (or the heap) for a parse. The maximum size bounds the buffer.
+ * <p>
+ * Errors are reported as Jsoup reports them: statuses outside 200-399 fail with an <code>HttpStatusException</code>,
+ * and content types other than text and XML with an <code>UnsupportedMimeTypeException</code>. Unlike Jsoup, redirects
+ * from https to http are not followed.
+ */
+public class HttpClientFetcher implements Fetcher {
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    public static final String DEFAULT_USER_AGENT = "Mozilla/5.0 (compatible; crawler-scraper)";
+
+    // The content types Jsoup accepts without ignoreContentType()
+    private static final Pattern XML_CONTENT_TYPE = Pattern.compile("(?i)(?:application|text)/\\w*\\+?xml.*");
+
+    private static final int READ_CHUNK_BYTES = 8192;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final long maxBodyBytes;
+    private final ScheduledExecutorService deadlines;  // closes the bodies not read in time
+
+    public HttpClientFetcher() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, DEFAULT_MAX_BODY_BYTES);
+    }
+
+    /**
+     * @param connectTimeout the time to wait for a new connection to be established
+     * @param requestTimeout the time to wait for a response to each request once it's sent, and then again for its
+     *                       body to be read
+     * @param maxBodyBytes   the size to cut bodies off at
+     */
+    public HttpClientFetcher(Duration connectTimeout, Duration requestTimeout, long maxBodyBytes) {
+        this.requestTimeout = requestTimeout;
+        this.maxBodyBytes = maxBodyBytes;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fetch-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+        HttpRequest request = newRequest(url, requestHeaders);
+        try {
+            return toFetchResponse(request, client.send(request, HttpResponse.BodyHandlers.ofInputStream()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+    }
+
+    /**
+     * Start fetching a page without waiting for the response. The body is read on one of the client's threads.
+     */
+    @Override
+    public CompletableFuture<FetchResponse> fetchAsync(String url, Map<String, String> requestHeaders) {
+        HttpRequest request;
+        try {
+            request = newRequest(url, requestHeaders);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    try {
+                        return toFetchResponse(request, response);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, client.executor().orElse(ForkJoinPool.commonPool()));
+    }
+
+    /**
+     * Close the client's connections.
+     */
+    @Override
+    public void close() {
+        deadlines.shutdownNow();
+        client.close();
+    }
+
+    private HttpRequest newRequest(String url, Map<String, String> requestHeaders) throws IOException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(URI.create(url));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid url: " + url, e);
+        }
+        builder.timeout(requestTimeout)
+                .header("User-Agent", DEFAULT_USER_AGENT)
+                .header("Accept-Encoding", "gzip");
+        requestHeaders.forEach(builder::setHeader);
+        return builder.GET().build();
+    }
+
+    /**
+     * Check the response's status and content type, then read its body. Closing the body's stream before it's read to
+     * the end abandons the rest of the download, which is how a body not read within the request timeout is cut off.
+     */
+    private FetchResponse toFetchResponse(HttpRequest request, HttpResponse<InputStream> response) throws IOException {
+        AtomicBoolean timedOut = new AtomicBoolean();
+        InputStream rawBody = response.body();
+        ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+            timedOut.set(true);
+            try {
+                rawBody.close();
+            } catch (IOException ignored) {
+            }
+        }, requestTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        try (rawBody) {
+            String url = response.uri().toString();
+            int statusCode = response.statusCode();
+            if (statusCode < 200 || statusCode >= 400) {
+                throw new HttpStatusException("HTTP error fetching URL", statusCode, url);
+            }
+            String contentType = response.headers().firstValue("Content-Type").orElse(null);
+            if (contentType != null && !contentType.startsWith("text/")
+                    && !XML_CONTENT_TYPE.matcher(contentType).matches()) {
+                throw new UnsupportedMimeTypeException("Unhandled content type. Must be text/*, application/xml, or " +
+                        "application/*+xml", contentType, url);
+            }
+
+            boolean gzipped = response.headers().firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip");
+            InputStream body = gzipped ? new GZIPInputStream(rawBody) : rawBody;
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[READ_CHUNK_BYTES];
+            boolean truncated = false;
+            int numRead;
+            try {
+                while ((numRead = body.read(chunk, 0, (int) Long.min(chunk.length,
+                        maxBodyBytes - bodyBytes.size() + 1))) != -1) {
+                    if (bodyBytes.size() + numRead > maxBodyBytes) {
+                        bodyBytes.write(chunk, 0, (int) (maxBodyBytes - bodyBytes.size()));
+                        truncated = true;
+                        break;
+                    }
+                    bodyBytes.write(chunk, 0, numRead);
+                }
+            } catch (IOException e) {
+                if (!timedOut.get()) {
+                    throw e;
+                }
+            }
+            // A read cut off by the deadline may end the stream rather than fail
+            if (timedOut.get() && !truncated) {
+                throw new HttpTimeoutException("Body of " + url + " not read within " + requestTimeout);
+            }
+
+            Map<String, String> sentHeaders = new LinkedHashMap<>();
+            request.headers().map().forEach((name, values) -> sentHeaders.put(name, String.join(", ", values)));
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            response.headers().map().forEach((name, values) -> {
+                if (!name.startsWith(":")) {  // HTTP/2 pseudo-headers
+                    headers.put(name, values);
+                }
+            });
+            return new FetchResponse(url, request.method(), sentHeaders, statusCode, "", headers,
+                    bodyBytes.toByteArray(), truncated);
+        } finally {
+            deadline.cancel(false);
+        }
+    }
+}
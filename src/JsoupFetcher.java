@@ -0,0 +1,38 @@
+// 10.15.2026
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Fetches pages with <code>Jsoup.connect(url)</code>, as the crawler always has. Each fetch opens its own HTTP/1.1
+ * connection. Kept as the fallback for sites the {@link HttpClientFetcher} has trouble with.
+ */
+public class JsoupFetcher implements Fetcher {
+    private final int maxBodyBytes;
+
+    public JsoupFetcher() {
+        this(DEFAULT_MAX_BODY_BYTES);
+    }
+
+    /**
+     * @param maxBodyBytes the size to cut bodies off at
+     */
+    public JsoupFetcher(long maxBodyBytes) {
+        this.maxBodyBytes = (int) Long.min(maxBodyBytes, Integer.MAX_VALUE - 1);
+    }
+
+    @Override
+    public FetchResponse fetch(String url, Map<String, String> requestHeaders) throws IOException {
+        // Jsoup doesn't say whether it cut a body off, so one byte more than the maximum is read to tell
+        Connection connection = Jsoup.connect(url).headers(requestHeaders).maxBodySize(maxBodyBytes + 1);
+        Connection.Response response = connection.execute();
+        byte[] body = response.bodyAsBytes();
+        boolean truncated = body.length > maxBodyBytes;
+        return new FetchResponse(response.url().toString(), response.method().name(), connection.request().headers(),
+                response.statusCode(), response.statusMessage(), response.multiHeaders(),
+                truncated ? Arrays.copyOf(body, maxBodyBytes) : body, truncated);
+    }
+}
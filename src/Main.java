@@ -1,24 +1,65 @@
 // 5.30.2023
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.mongodb.client.*;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
 
 /**
- * Run both the crawler and scraper and display their results periodically.
+ * Run both the crawler and scraper, printing their status periodically, and display their results on request. Run with
+ * --headless to only print the status, e.g. for unattended runs, and with an url to crawl a site other than
+ * www.touro.edu. Run several processes with --node=NAME (a different name each) against the same db to share the crawl
+ * between them.
  */
 public class Main {
-    public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in);
-
-        final String initialUrl = "https://www.touro.edu";
-        final String domain = "touro.edu";
+    public static void main(String[] args) throws InterruptedException, IOException {
+        // Run with the url to start crawling from (e.g. a local test site) to crawl its domain instead. The domain is
+        // the url's host without any leading "www."
+        final String initialUrl = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).findFirst()
+                .orElse("https://www.touro.edu");
+        final String domain = HostScheduler.hostOf(initialUrl).replaceFirst("^www\\.", "");
+        // Run with --recrawl to visit every previously visited page again, only scraping the pages that changed
+        final boolean RECRAWL = Arrays.asList(args).contains("--recrawl");
+        // Run with --headless to not read any input, only printing the status every STATUS_INTERVAL_MS
+        final boolean HEADLESS = Arrays.asList(args).contains("--headless");
+        // Run with --node=NAME to crawl as one node of a distributed crawl, sharing the frontier with every other node
+        // run against the same db. The name must be unique among the nodes, and the same each time the node is run.
+        final String NODE_NAME = Arrays.stream(args).filter(arg -> arg.startsWith("--node=")).findFirst()
+                .map(arg -> arg.substring("--node=".length())).orElse(null);
+        if (NODE_NAME != null && RECRAWL) {
+            System.out.println("A recrawl can't be distributed; run it with a single process, without --node.");
+            return;
+        }
 
         final int DISPLAY_COLUMN_WIDTH = 168;
-        final int DISPLAY_INTERVAL_MS = 60000;
-        final int DISPLAY_INTERVAL_ITERATIONS = 10;
+        final int DISPLAY_PAGE_SIZE = 50;  // values of each type shown at a time
+        final int STATUS_INTERVAL_MS = 5000;
+        final int MAX_CONCURRENT_DOWNLOADS = 16;
+        final int NUM_SCRAPER_THREADS = Runtime.getRuntime().availableProcessors();
+        // Pages downloaded but not yet scraped, before the crawler waits for the scraper
+        final int MAX_QUEUED_PAGES = 64;
+        // Bodies are cut off after this, so one page can't take the whole heap
+        final long MAX_PAGE_BYTES = 10L * 1024 * 1024;
+        // Per host, so that each host only sees one request per interval
+        final long MIN_HOST_DOWNLOAD_INTERVAL_MS = 10000;
+        // Metrics are served at http://127.0.0.1:METRICS_PORT/metrics
+        final int METRICS_PORT = MetricsServer.DEFAULT_PORT;
+        // How often the urls are snapshotted, to be loaded quickly on restart
+        final long SNAPSHOT_INTERVAL_MS = 5 * 60 * 1000;
+        // The rewrites made to every url found before it's checked for duplicates; remove a rule to queue the urls it
+        // would have rewritten as they are
+        final Set<UrlCanonicalizer.Rule> CANONICALIZATION_RULES = EnumSet.allOf(UrlCanonicalizer.Rule.class);
+        // Urls are downloaded closest to the start url and most linked to first, moved up or down by each of these
+        // patterns they match. Files that aren't HTML are abandoned anyway, and calendars and searches never run out.
+        final Map<String, Integer> URL_PRIORITY_BOOSTS = Map.of(
+                "(?i)\\.(pdf|docx?|xlsx?|pptx?|zip|jpe?g|png|gif|mp[34])$", -16,
+                "(?i)/(search|login|logout|cart)\\b", -16,
+                "(?i)/(calendar|events?)/", -8,
+                "(?i)[?&](page|sort|filter|date)=", -4);
 
         // Get or create the db
         final MongoClient MONGO_CLIENT = MongoClients.create();
@@ -26,100 +67,130 @@ public class Main {
         String dbName = domain.replace(".", "_").replace("/", "#") + "-Data";
         final MongoDatabase DB = MONGO_CLIENT.getDatabase(dbName);
         final MongoCollection<org.bson.Document> SCRAPER_DATA_COLLECTION = DB.getCollection("scraperData");
-        final MongoCollection<org.bson.Document> SCRAPER_URLS_COLLECTION = DB.getCollection("scraperUrls");
+        final MongoCollection<org.bson.Document> SCRAPER_OCCURRENCES_COLLECTION =
+                DB.getCollection("scraperOccurrences");
+        // Each node scrapes the pages it downloaded itself, so it keeps the pages waiting to be scraped to itself
+        final String NODE_SUFFIX = NODE_NAME != null ? "-" + NODE_NAME : "";
+        final MongoCollection<org.bson.Document> SCRAPER_URLS_COLLECTION =
+                DB.getCollection("scraperUrls" + NODE_SUFFIX);
         final MongoCollection<org.bson.Document> CRAWLER_URLS_COLLECTION = DB.getCollection("crawlerUrls");
+        final MongoCollection<org.bson.Document> NODES_COLLECTION = DB.getCollection("crawlerNodes");
+        // Recorded by the fetch engine, host scheduler, scraper and url write buffer, and served to Prometheus
+        final Metrics METRICS = new Metrics();
+        // The crawler's and scraper's url changes are held and written together in bulk, at least once a second
+        final WriteBehindBuffer URL_WRITE_BUFFER = new WriteBehindBuffer(WriteBehindBuffer.DEFAULT_MAX_PENDING,
+                WriteBehindBuffer.DEFAULT_FLUSH_INTERVAL_MS, METRICS);
         IndexOptions indexOptions = new IndexOptions().unique(true);
         SCRAPER_DATA_COLLECTION.createIndex(Indexes.ascending("value", "type"), indexOptions);
-        SCRAPER_URLS_COLLECTION.createIndex(Indexes.ascending("type"), indexOptions);
-        CRAWLER_URLS_COLLECTION.createIndex(Indexes.ascending("type"), indexOptions);
-
-        /* After the crawler is given the initial page url, each next page is processed with the scraper and crawler's
-         * respective processNext() calls. Each will process the single next page in their respective queues.
-         * Crawler's processNext() method must be called first to download the initial page, otherwise scraper would have
-         * nothing to scrape). The crawler will then give the scraper its next page to process.
-         * In a similar manner, Scraper will then give crawler its next url(s).
-         * */
-        Crawler crawler = new Crawler(initialUrl, CRAWLER_URLS_COLLECTION);
-        Scraper scraper = new Scraper(domain, SCRAPER_DATA_COLLECTION, SCRAPER_URLS_COLLECTION);
+        // The occurrences collection is indexed (and filled from the data's old occurrence arrays) by its
+        // OccurrenceStore, and the urls collections are indexed (and migrated from their old single-document layout)
+        // by their UrlStore
 
-        int numProcessedPages = 0;
-        long lastDisplayTimeEnd = System.currentTimeMillis();
-        long timeSinceLastDisplay;
+        // Downloaded pages are kept on disk next to the db, so pages not yet scraped survive a restart without being
+        // downloaded again
+        final PageStore PAGE_STORE = new PageStore(Path.of(dbName + "-pages"));
+        // Every fetched request and response is also archived, so the site can be scraped again without fetching it
+        final WarcWriter ARCHIVE = new WarcWriter(Path.of(dbName + "-warc"), dbName + NODE_SUFFIX);
+        // The crawler's and scraper's urls are snapshotted next to the db too, so a restart only reads the urls changed
+        // since the last snapshot from the db, instead of all of them
+        final Path CRAWLER_SNAPSHOT_FILE = Path.of(dbName + "-crawlerUrls" + NODE_SUFFIX + ".snapshot");
+        final Path SCRAPER_SNAPSHOT_FILE = Path.of(dbName + "-scraperUrls" + NODE_SUFFIX + ".snapshot");
+        // In a distributed crawl, the urls to download are leased from the shared frontier, by the hosts this node owns
+        final NodeRegistry NODES = NODE_NAME != null ? new NodeRegistry(NODES_COLLECTION, NODE_NAME) : null;
+        final UrlLeases LEASES = NODES != null ? new UrlLeases(CRAWLER_URLS_COLLECTION, NODES) : null;
 
-        System.out.println("-".repeat(75));
+        /* After the crawler is given the initial page url, the crawler and scraper each run as their own stage of the
+         * pipeline, on their own threads. The crawler starts the download of the next url whose host is ready, and up
+         * to MAX_CONCURRENT_DOWNLOADS (across different hosts) may run at once; each one puts its page on the
+         * scraper's queue (of at most MAX_QUEUED_PAGES) as soon as it completes.
+         * NUM_SCRAPER_THREADS take pages off that queue, and in a similar manner give crawler the next url(s).
+         * */
+        HttpClientFetcher fetcher = new HttpClientFetcher(HttpClientFetcher.DEFAULT_CONNECT_TIMEOUT,
+                HttpClientFetcher.DEFAULT_REQUEST_TIMEOUT, MAX_PAGE_BYTES);
+        FetchEngine fetchEngine = new FetchEngine(MAX_CONCURRENT_DOWNLOADS, fetcher, PAGE_STORE, ARCHIVE, METRICS);
+        Crawler crawler = new Crawler.Builder(initialUrl, CRAWLER_URLS_COLLECTION)
+                .fetchEngine(fetchEngine)
+                .hostScheduler(new HostScheduler(MIN_HOST_DOWNLOAD_INTERVAL_MS, METRICS))
+                .recrawl(RECRAWL)
+                .writeBuffer(URL_WRITE_BUFFER)
+                .snapshotFile(CRAWLER_SNAPSHOT_FILE)
+                .leases(LEASES)
+                .canonicalizer(new UrlCanonicalizer(initialUrl, CANONICALIZATION_RULES, METRICS))
+                .scorer(new WeightedUrlScorer(WeightedUrlScorer.DEFAULT_DEPTH_WEIGHT,
+                        WeightedUrlScorer.DEFAULT_IN_LINK_WEIGHT, URL_PRIORITY_BOOSTS))
+                .build();
+        Scraper scraper = new Scraper.Builder(domain, SCRAPER_DATA_COLLECTION, SCRAPER_URLS_COLLECTION)
+                .occurrencesCollection(SCRAPER_OCCURRENCES_COLLECTION)
+                .maxQueuedPages(MAX_QUEUED_PAGES)
+                .pageStore(PAGE_STORE)
+                .writeBuffer(URL_WRITE_BUFFER)
+                .metrics(METRICS)
+                .snapshotFile(SCRAPER_SNAPSHOT_FILE)
+                .build();
+        CrawlPipeline pipeline = new CrawlPipeline(crawler, scraper, NUM_SCRAPER_THREADS, !HEADLESS);
 
-        while (crawler.hasNext() || scraper.hasNext()) {
-            timeSinceLastDisplay = System.currentTimeMillis() - lastDisplayTimeEnd;
+        // The queue depths are only read when the metrics are scraped
+        METRICS.gauge("crawler_urls_to_visit", "Urls waiting to be downloaded.", crawler::getNumUrlsLeftToVisit);
+        METRICS.gauge("crawler_downloads_in_flight", "Downloads currently running.", crawler::getNumDownloadsInFlight);
+        METRICS.gauge("scraper_pages_to_visit", "Downloaded pages waiting to be scraped.",
+                scraper::getNumUrlsLeftToVisit);
+        METRICS.gauge("scraper_queued_page_bytes", "Memory taken by the pages waiting to be scraped.",
+                scraper::getQueuedPageBytes);
+        METRICS.gauge("url_changes_pending", "Url state changes not yet written to the db.",
+                URL_WRITE_BUFFER::getNumPending);
+        if (NODES != null) {
+            METRICS.gauge("crawler_live_nodes", "Nodes sharing the crawl, as of the last heartbeat.",
+                    () -> NODES.getLiveNodeIds().size());
+        }
+        MetricsServer metricsServer = null;
+        try {
+            metricsServer = new MetricsServer(METRICS, METRICS_PORT);
+        } catch (IOException e) {
+            System.out.println("Error serving metrics on port " + METRICS_PORT + " - running without them. "
+                    + e.getMessage());
+        }
 
-            // Crawl and scrape the next page
-            System.out.println("///    Crawler processed: " + crawler.processNext(scraper, true));
-            System.out.println("///    Scraper processed: " + scraper.processNext(crawler));
-            System.out.println("///    Crawler visited " + crawler.getNumUrlsVisited() + " out of the " +
-                    (crawler.getNumUrlsLeftToVisit() + crawler.getNumUrlsVisited()) + " discovered pages so far. ");
-            System.out.println("///    Scraper visited " + scraper.getNumUrlsVisited() + " out of the " +
-                    (scraper.getNumUrlsLeftToVisit() + scraper.getNumUrlsVisited()) + " downloaded pages so far. ");
-            System.out.println("-".repeat(75));
+        // The console runs on its own thread and only reads the latest snapshot of the crawl's status, so the crawl
+        // never waits on it
+        AtomicReference<CrawlStats> latestStats = new AtomicReference<>();
+        ResultsConsole console = new ResultsConsole(scraper, latestStats::get, System.in, DISPLAY_COLUMN_WIDTH,
+                DISPLAY_PAGE_SIZE);
 
-            // Display results every so often
-            if (numProcessedPages % DISPLAY_INTERVAL_ITERATIONS == 0 || timeSinceLastDisplay > DISPLAY_INTERVAL_MS) {
-                System.out.print("""
-                        "All" - all info
-                        "A" - addresses
-                        "C" - course codes
-                        "D" - (us) dates
-                        "E" - emails
-                        "EU" - external URLs
-                        "I" - image links
-                        "IU" - internal URLs
-                        "P" - phone numbers
-                        "N" - don't display results
-                        Type one of the above to see the corresponding info:\s""");
-                String input = scanner.nextLine();
-                HashMap<Scraper.DataType, FindIterable<org.bson.Document>> data = scraper.getAllData();
-                List<Scraper.DataType> dataTypesToDisplay = new ArrayList<>();
-                switch (input.toUpperCase()) {
-                    case "ALL" -> dataTypesToDisplay.addAll(data.keySet());
-                    case "A" -> dataTypesToDisplay.add(Scraper.DataType.Address);
-                    case "C" -> dataTypesToDisplay.add(Scraper.DataType.CourseCode);
-                    case "D" -> dataTypesToDisplay.add(Scraper.DataType.UsDate);
-                    case "E" -> dataTypesToDisplay.add(Scraper.DataType.EmailAddress);
-                    case "EU" -> dataTypesToDisplay.add(Scraper.DataType.ExternalUrl);
-                    case "I" -> dataTypesToDisplay.add(Scraper.DataType.ImageUrl);
-                    case "IU" -> dataTypesToDisplay.add(Scraper.DataType.InternalUrl);
-                    case "P" -> dataTypesToDisplay.add(Scraper.DataType.PhoneNumber);
-                    case "N" -> System.out.println("-".repeat(DISPLAY_COLUMN_WIDTH));
-                    default -> System.out.println("No valid input received. Not displaying any results.");
-                }
+        System.out.println("-".repeat(75));
+        pipeline.start();
+        if (!HEADLESS) {
+            console.start();
+        }
 
-                HashMap<Scraper.DataType, Integer> numOfDataTypeFound = new HashMap<>();
-                for (Scraper.DataType type : dataTypesToDisplay) {
-                    if (data.containsKey(type)) {
-                        StringBuilder sb = new StringBuilder();
-                        int numItems = 0;
-                        for (org.bson.Document doc : data.get(type)) {
-                            sb.append(String.format("%-" + (DISPLAY_COLUMN_WIDTH - 18) + "." +
-                                            (DISPLAY_COLUMN_WIDTH - 18) + "s", doc.get("value")))
-                                    .append("|")
-                                    .append(String.format("%15s", doc.get("totalInstances")))
-                                    .append("\n");
-                            numItems++;
-                        }
-                        numOfDataTypeFound.put(type, numItems);
-                        System.out.println("\nFound " + numItems + " unique " + type + "s:");
-                        System.out.println("-".repeat(DISPLAY_COLUMN_WIDTH));
-                        System.out.println(String.format("%-" + (DISPLAY_COLUMN_WIDTH - 18) + "." +
-                                (DISPLAY_COLUMN_WIDTH - 18) + "s", type) + "|" +
-                                String.format("%-15s", "\sNumber found"));
-                        System.out.println("-".repeat(DISPLAY_COLUMN_WIDTH));
-                        System.out.println(sb);
-                    }
-                }
-                System.out.println("-".repeat(DISPLAY_COLUMN_WIDTH));
-                numOfDataTypeFound.forEach((type, numItems) -> System.out.println("Found " + numItems + " unique " + type + "s."));
-                System.out.println("-".repeat(DISPLAY_COLUMN_WIDTH));
-                lastDisplayTimeEnd = System.currentTimeMillis();
+        long lastSnapshotTime = System.currentTimeMillis();
+        while (!pipeline.awaitFinished(STATUS_INTERVAL_MS)) {
+            if (System.currentTimeMillis() - lastSnapshotTime >= SNAPSHOT_INTERVAL_MS) {
+                crawler.saveSnapshot();
+                scraper.saveSnapshot();
+                lastSnapshotTime = System.currentTimeMillis();
             }
-            numProcessedPages++;
+            CrawlStats stats = CrawlStats.capture(crawler, scraper, fetchEngine, URL_WRITE_BUFFER, ARCHIVE);
+            latestStats.set(stats);
+            if (HEADLESS) {
+                stats.toStatusLines().forEach(System.out::println);
+                System.out.println("-".repeat(75));
+            }
+        }
+        CrawlStats.capture(crawler, scraper, fetchEngine, URL_WRITE_BUFFER, ARCHIVE).toStatusLines()
+                .forEach(System.out::println);
+        System.out.println("Finished crawling and scraping.");
+        pipeline.close();
+        crawler.saveSnapshot();
+        scraper.saveSnapshot();
+        fetchEngine.close();
+        URL_WRITE_BUFFER.close();
+        if (LEASES != null) {
+            LEASES.close();
+            NODES.close();
+        }
+        ARCHIVE.close();
+        if (metricsServer != null) {
+            metricsServer.close();
         }
     }
 }
\ No newline at end of file
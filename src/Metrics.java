@@ -0,0 +1,302 @@
+// 10.15.2026
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A registry of the crawl's metrics, rendered in the Prometheus text exposition format (served by
+ * {@link MetricsServer}). There are three kinds:
+ * <ul>
+ *     <li>{@link Counter}s, which only go up (e.g. pages fetched; Prometheus derives the rate per second)</li>
+ *     <li>{@link Histogram}s of durations in seconds (e.g. fetch latency), with fixed buckets</li>
+ *     <li>gauges, which are read from a supplier only when the metrics are rendered (e.g. queue depths)</li>
+ * </ul>
+ * Recording a value is a lookup in a concurrent map and an increment of a <code>LongAdder</code>, so the metrics can be
+ * left on while crawling. Label values should come from a small, fixed set (a type, a host of the crawled domain, a
+ * collection); every distinct combination is kept for the life of the registry.
+ * <p>
+ * Thread-safe.
+ */
+public class Metrics {
+    // From 1 ms up to a minute, covering both db writes and slow page downloads
+    public static final double[] DEFAULT_BUCKETS_SECONDS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5,
+            10, 30, 60};
+
+    private final Map<String, Family> families = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * What all the kinds of metrics have in common: a name, a description and the names of their labels.
+     */
+    private abstract static class Family {
+        final String name;
+        final String help;
+        final String[] labelNames;
+
+        Family(String name, String help, String[] labelNames) {
+            this.name = name;
+            this.help = help;
+            this.labelNames = labelNames;
+        }
+
+        abstract String type();
+
+        abstract void render(StringBuilder out);
+
+        List<String> key(String[] labelValues) {
+            if (labelValues.length != labelNames.length) {
+                throw new IllegalArgumentException(name + " takes " + labelNames.length + " label values, was given "
+                        + labelValues.length);
+            }
+            return List.of(labelValues);
+        }
+
+        /**
+         * Render the labels of a series, with any extra label (such as a histogram's bucket) last.
+         */
+        String labels(List<String> labelValues, String extraName, String extraValue) {
+            if (labelValues.isEmpty() && extraName == null) {
+                return "";
+            }
+            StringJoiner labels = new StringJoiner(",", "{", "}");
+            for (int i = 0; i < labelNames.length; i++) {
+                labels.add(labelNames[i] + "=\"" + escape(labelValues.get(i)) + "\"");
+            }
+            if (extraName != null) {
+                labels.add(extraName + "=\"" + extraValue + "\"");
+            }
+            return labels.toString();
+        }
+    }
+
+    /**
+     * A count that only goes up, one series per combination of label values.
+     */
+    public static final class Counter extends Family {
+        private final ConcurrentHashMap<List<String>, LongAdder> series = new ConcurrentHashMap<>();
+
+        private Counter(String name, String help, String[] labelNames) {
+            super(name, help, labelNames);
+        }
+
+        /**
+         * Add one to the count.
+         *
+         * @param labelValues the values of the counter's labels, in the order they were named
+         */
+        public void inc(String... labelValues) {
+            add(1, labelValues);
+        }
+
+        /**
+         * Add to the count.
+         *
+         * @param amount      the amount to add
+         * @param labelValues the values of the counter's labels, in the order they were named
+         */
+        public void add(long amount, String... labelValues) {
+            series.computeIfAbsent(key(labelValues), k -> new LongAdder()).add(amount);
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        void render(StringBuilder out) {
+            series.forEach((labelValues, count) -> out.append(name).append(labels(labelValues, null, null))
+                    .append(' ').append(count.sum()).append('\n'));
+        }
+    }
+
+    /**
+     * A distribution of durations in seconds, one series per combination of label values. Each observation is counted
+     * in the first bucket it fits in; the cumulative counts Prometheus expects are only summed up when rendered.
+     */
+    public static final class Histogram extends Family {
+        private final double[] bounds;
+        private final ConcurrentHashMap<List<String>, Series> series = new ConcurrentHashMap<>();
+
+        private static final class Series {
+            final LongAdder[] buckets;  // the last one holds the observations above every bound
+            final DoubleAdder sum = new DoubleAdder();
+
+            Series(int numBuckets) {
+                buckets = new LongAdder[numBuckets];
+                Arrays.setAll(buckets, i -> new LongAdder());
+            }
+        }
+
+        private Histogram(String name, String help, double[] bounds, String[] labelNames) {
+            super(name, help, labelNames);
+            this.bounds = bounds.clone();
+            Arrays.sort(this.bounds);
+        }
+
+        /**
+         * Record a duration.
+         *
+         * @param seconds     the duration, in seconds
+         * @param labelValues the values of the histogram's labels, in the order they were named
+         */
+        public void observe(double seconds, String... labelValues) {
+            Series s = series.computeIfAbsent(key(labelValues), k -> new Series(bounds.length + 1));
+            int bucket = Arrays.binarySearch(bounds, seconds);
+            s.buckets[bucket >= 0 ? bucket : -bucket - 1].increment();
+            s.sum.add(seconds);
+        }
+
+        /**
+         * Record a duration measured with <code>System.nanoTime()</code>.
+         *
+         * @param startNanos  the time the duration started at, as returned by <code>System.nanoTime()</code>
+         * @param labelValues the values of the histogram's labels, in the order they were named
+         */
+        public void observeSince(long startNanos, String... labelValues) {
+            observe((System.nanoTime() - startNanos) / 1e9, labelValues);
+        }
+
+        @Override
+        String type() {
+            return "histogram";
+        }
+
+        @Override
+        void render(StringBuilder out) {
+            series.forEach((labelValues, s) -> {
+                long cumulative = 0;
+                for (int i = 0; i <= bounds.length; i++) {
+                    cumulative += s.buckets[i].sum();
+                    String le = i < bounds.length ? formatDouble(bounds[i]) : "+Inf";
+                    out.append(name).append("_bucket").append(labels(labelValues, "le", le)).append(' ')
+                            .append(cumulative).append('\n');
+                }
+                out.append(name).append("_sum").append(labels(labelValues, null, null)).append(' ')
+                        .append(formatDouble(s.sum.sum())).append('\n');
+                out.append(name).append("_count").append(labels(labelValues, null, null)).append(' ')
+                        .append(cumulative).append('\n');
+            });
+        }
+    }
+
+    /**
+     * A value read when the metrics are rendered.
+     */
+    private static final class Gauge extends Family {
+        private final DoubleSupplier value;
+
+        private Gauge(String name, String help, DoubleSupplier value) {
+            super(name, help, new String[0]);
+            this.value = value;
+        }
+
+        @Override
+        String type() {
+            return "gauge";
+        }
+
+        @Override
+        void render(StringBuilder out) {
+            out.append(name).append(' ').append(formatDouble(value.getAsDouble())).append('\n');
+        }
+    }
+
+    /**
+     * Get the counter with the given name, registering it if it isn't yet.
+     *
+     * @param name       the counter's name, which by convention ends in <code>_total</code>
+     * @param help       a description of what's counted
+     * @param labelNames the names of the counter's labels
+     * @return the counter
+     */
+    public Counter counter(String name, String help, String... labelNames) {
+        return register(new Counter(name, help, labelNames));
+    }
+
+    /**
+     * Get the histogram with the given name, registering it with the default buckets if it isn't yet.
+     *
+     * @param name       the histogram's name, which by convention ends in <code>_seconds</code>
+     * @param help       a description of what's measured
+     * @param labelNames the names of the histogram's labels
+     * @return the histogram
+     */
+    public Histogram histogram(String name, String help, String... labelNames) {
+        return register(new Histogram(name, help, DEFAULT_BUCKETS_SECONDS, labelNames));
+    }
+
+    /**
+     * Get the histogram of the time taken by writes to the db, by collection, shared by everything that writes to it.
+     *
+     * @return the histogram
+     */
+    public Histogram mongoWriteSeconds() {
+        return histogram("mongo_write_seconds", "Time taken by a (bulk) write to the db, by collection.", "collection");
+    }
+
+    /**
+     * Register a gauge, replacing any registered under the same name.
+     *
+     * @param name  the gauge's name
+     * @param help  a description of what's measured
+     * @param value gives the gauge's current value. It's called each time the metrics are rendered, so it should be
+     *              cheap and thread-safe.
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        families.put(name, new Gauge(name, help, value));
+    }
+
+    /**
+     * Render all the metrics in the Prometheus text exposition format (version 0.0.4).
+     *
+     * @return the rendered metrics
+     */
+    public String render() {
+        List<Family> snapshot;
+        synchronized (families) {
+            snapshot = new ArrayList<>(families.values());
+        }
+        StringBuilder out = new StringBuilder();
+        for (Family family : snapshot) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help.replace("\\", "\\\\")
+                    .replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type()).append('\n');
+            family.render(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Register a counter or histogram, or get the one already registered under its name so that two components
+     * recording the same metric share it.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Family> T register(T family) {
+        Family existing = families.putIfAbsent(family.name, family);
+        if (existing == null) {
+            return family;
+        }
+        if (existing.getClass() != family.getClass() || !Arrays.equals(existing.labelNames, family.labelNames)) {
+            throw new IllegalArgumentException("Metric " + family.name + " is already registered differently");
+        }
+        return (T) existing;
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String formatDouble(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+}
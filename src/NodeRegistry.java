@@ -0,0 +1,137 @@
+// 10.15.2026
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the nodes taking part in a distributed crawl. Each node has a document in the nodes collection that it
+ * stamps with the time at a fixed interval (its heartbeat):
+ * <pre>
+ * { _id: "node-1", lastSeen: 1791000000000 }
+ * </pre>
+ * A node whose heartbeat is older than the timeout is taken to be dead. After each heartbeat the live nodes are read
+ * back and placed on a {@link ConsistentHashRing}, which every node then uses to tell which keys are its own. The
+ * nodes' clocks are assumed to agree to well within the timeout.
+ * <p>
+ * Until its first heartbeat is read back (and whenever the db can't be reached) a node keeps the last ring it had, with
+ * itself always on it. Thread-safe.
+ */
+public class NodeRegistry implements AutoCloseable {
+    public static final long DEFAULT_HEARTBEAT_INTERVAL_MS = 5000;
+    public static final long DEFAULT_NODE_TIMEOUT_MS = 30000;
+    private static final String LAST_SEEN = "lastSeen";
+
+    private final MongoCollection<org.bson.Document> collection;
+    private final String nodeId;
+    private final long nodeTimeoutMs;
+    private final ScheduledExecutorService heartbeat;
+    private volatile List<String> liveNodeIds;
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * Register the node and start its heartbeat.
+     *
+     * @param collection the MongoDB collection of the nodes, shared by all of them
+     * @param nodeId     the node's id, unique among the nodes
+     */
+    public NodeRegistry(MongoCollection<org.bson.Document> collection, String nodeId) {
+        this(collection, nodeId, DEFAULT_HEARTBEAT_INTERVAL_MS, DEFAULT_NODE_TIMEOUT_MS);
+    }
+
+    /**
+     * Register the node and start its heartbeat.
+     *
+     * @param collection          the MongoDB collection of the nodes, shared by all of them
+     * @param nodeId              the node's id, unique among the nodes
+     * @param heartbeatIntervalMs the time between the node's heartbeats
+     * @param nodeTimeoutMs       the time since its last heartbeat after which a node is taken to be dead
+     */
+    public NodeRegistry(MongoCollection<org.bson.Document> collection, String nodeId, long heartbeatIntervalMs,
+                        long nodeTimeoutMs) {
+        this.collection = collection;
+        this.nodeId = nodeId;
+        this.nodeTimeoutMs = nodeTimeoutMs;
+        this.liveNodeIds = List.of(nodeId);
+        this.ring = new ConsistentHashRing(liveNodeIds);
+        beat();
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "node-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::beat, heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get this node's id
+     *
+     * @return the node's id
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Get the ids of the nodes alive as of the last heartbeat, in order, this one included
+     *
+     * @return the ids of the live nodes
+     */
+    public List<String> getLiveNodeIds() {
+        return liveNodeIds;
+    }
+
+    /**
+     * Indicate if a key belongs to this node, as of the last heartbeat.
+     *
+     * @param key the key
+     * @return <code>true</code> if the key is this node's; otherwise <code>false</code>.
+     */
+    public boolean owns(String key) {
+        return nodeId.equals(ring.nodeFor(key));
+    }
+
+    /**
+     * Stop the heartbeat and remove the node, so that the others take over its keys straight away rather than once it
+     * times out.
+     */
+    @Override
+    public void close() {
+        heartbeat.shutdown();
+        try {
+            heartbeat.awaitTermination(1, TimeUnit.MINUTES);
+            collection.deleteOne(Filters.eq("_id", nodeId));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (MongoException e) {
+            System.out.println("Error removing node " + nodeId + " - it will time out instead. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stamp the node's document, then read back the live nodes and rebuild the ring from them.
+     */
+    private void beat() {
+        try {
+            long now = System.currentTimeMillis();
+            collection.updateOne(Filters.eq("_id", nodeId), Updates.set(LAST_SEEN, now),
+                    new UpdateOptions().upsert(true));
+            TreeSet<String> live = new TreeSet<>();
+            live.add(nodeId);
+            collection.find(Filters.gte(LAST_SEEN, now - nodeTimeoutMs))
+                    .forEach(doc -> live.add(doc.getString("_id")));
+            if (!live.equals(new TreeSet<>(liveNodeIds))) {
+                liveNodeIds = List.copyOf(live);
+                ring = new ConsistentHashRing(live);
+            }
+        } catch (MongoException e) {
+            System.out.println("Error sending the heartbeat of node " + nodeId + " - will retry. " + e.getMessage());
+        }
+    }
+}
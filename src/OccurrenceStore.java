@@ -0,0 +1,155 @@
+// 10.15.2026
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import org.bson.conversions.Bson;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the number of times each value was found on each page, one document per value and page:
+ * <pre>
+ * { type: "Email", value: "info@touro.edu", url: "https://www.touro.edu/", count: 2 }
+ * </pre>
+ * with a unique index on <code>(type, value, url)</code>. Recording an occurrence is then a single indexed upsert
+ * that costs the same however many pages the value was found on, and the value's own document only keeps its total.
+ * Scraping a page again sets its counts rather than adding to them, and removes the values no longer found on it; its
+ * previous counts are read first with {@link #find(String)}, so that the totals can be corrected by the difference.
+ * <p>
+ * Earlier versions pushed each occurrence onto a <code>numInstancesByUrl</code> array in the value's document, which
+ * grew (and was rewritten) with every page the value was found on; those arrays are moved here when the store is
+ * created.
+ */
+public class OccurrenceStore {
+    private static final String TYPE = "type";
+    private static final String VALUE = "value";
+    private static final String URL = "url";
+    private static final String COUNT = "count";
+    private static final String LEGACY_OCCURRENCES = "numInstancesByUrl";
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+
+    private final MongoCollection<org.bson.Document> collection;
+
+    /**
+     * Create the store's index and move any occurrences still kept in the values' documents into it.
+     *
+     * @param collection     the MongoDB collection to hold the occurrences
+     * @param dataCollection the MongoDB collection of the values, to move the old occurrence arrays out of
+     */
+    public OccurrenceStore(MongoCollection<org.bson.Document> collection,
+                           MongoCollection<org.bson.Document> dataCollection) {
+        this.collection = collection;
+        collection.createIndex(Indexes.ascending(TYPE, VALUE, URL), new IndexOptions().unique(true));
+        collection.createIndex(Indexes.ascending(URL));
+        migrateLegacyOccurrences(dataCollection);
+    }
+
+    /**
+     * Get the number of times each value was found on a page the last time it was scraped.
+     *
+     * @param url the url of the page
+     * @return the number of times each value of each type was found on the page; empty if it wasn't scraped before
+     */
+    public HashMap<Scraper.DataType, HashMap<String, Integer>> find(String url) {
+        HashMap<Scraper.DataType, HashMap<String, Integer>> pageData = new HashMap<>();
+        for (org.bson.Document doc : collection.find(Filters.eq(URL, url))
+                .projection(Projections.fields(Projections.include(TYPE, VALUE, COUNT), Projections.excludeId()))) {
+            pageData.computeIfAbsent(Scraper.DataType.valueOf(doc.getString(TYPE)), type -> new HashMap<>())
+                    .put(doc.getString(VALUE), doc.get(COUNT, Number.class).intValue());
+        }
+        return pageData;
+    }
+
+    /**
+     * Record the number of times each value was found on a page, and remove the values found on it before that no
+     * longer are, in one unordered bulk write.
+     *
+     * @param url      the url of the page
+     * @param pageData the number of times each value of each type was found on the page
+     * @param previous the number of times each value was found on the page before, as given by {@link #find(String)}
+     * @return the number of occurrences written or removed
+     */
+    public int record(String url, Map<Scraper.DataType, HashMap<String, Integer>> pageData,
+                      Map<Scraper.DataType, HashMap<String, Integer>> previous) {
+        List<WriteModel<org.bson.Document>> writes = new ArrayList<>();
+        UpdateOptions options = new UpdateOptions().upsert(true);
+        pageData.forEach((type, items) -> items.forEach((value, count) -> writes.add(new UpdateOneModel<>(
+                Filters.and(Filters.eq(TYPE, type), Filters.eq(VALUE, value), Filters.eq(URL, url)),
+                Updates.set(COUNT, count), options))));
+        previous.forEach((type, items) -> items.keySet().forEach(value -> {
+            if (!pageData.getOrDefault(type, new HashMap<>()).containsKey(value)) {
+                writes.add(new DeleteOneModel<>(
+                        Filters.and(Filters.eq(TYPE, type), Filters.eq(VALUE, value), Filters.eq(URL, url))));
+            }
+        }));
+        if (writes.isEmpty()) {
+            return 0;
+        }
+        try {
+            collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            System.out.println("Scraper error storing " + e.getWriteErrors().size() + " of the " + writes.size()
+                    + " occurrences found on " + url + ". " + e.getMessage());
+        }
+        return writes.size();
+    }
+
+    /**
+     * Get the pages a value was found on, with the number of times it was found on each, the most first.
+     *
+     * @param type  the value's type
+     * @param value the value
+     * @return the value's occurrences, as documents of <code>url</code> and <code>count</code>
+     */
+    public FindIterable<org.bson.Document> find(Scraper.DataType type, String value) {
+        return collection.find(Filters.and(Filters.eq(TYPE, type), Filters.eq(VALUE, value)))
+                .projection(Projections.fields(Projections.include(URL, COUNT), Projections.excludeId()))
+                .sort(Sorts.descending(COUNT));
+    }
+
+    /**
+     * Get the name of the collection holding the occurrences
+     *
+     * @return the collection's name
+     */
+    public String getCollectionName() {
+        return collection.getNamespace().getCollectionName();
+    }
+
+    /**
+     * Move each value's <code>numInstancesByUrl</code> array into this collection, a value at a time, removing the
+     * array once it's moved. The upserts are idempotent, so a migration cut short is simply picked up again.
+     */
+    private void migrateLegacyOccurrences(MongoCollection<org.bson.Document> dataCollection) {
+        Bson legacyFilter = Filters.exists(LEGACY_OCCURRENCES);
+        List<WriteModel<org.bson.Document>> batch = new ArrayList<>();
+        UpdateOptions options = new UpdateOptions().upsert(true);
+        for (org.bson.Document legacy : dataCollection.find(legacyFilter)
+                .projection(Projections.include(TYPE, VALUE, LEGACY_OCCURRENCES))) {
+            // A page scraped more than once has an entry for each time; the last one is kept
+            Map<Object, Object> countByUrl = new LinkedHashMap<>();
+            for (org.bson.Document occurrence : legacy.getList(LEGACY_OCCURRENCES, org.bson.Document.class)) {
+                countByUrl.put(occurrence.get(URL), occurrence.get(COUNT));
+            }
+            for (Map.Entry<Object, Object> occurrence : countByUrl.entrySet()) {
+                batch.add(new UpdateOneModel<>(Filters.and(Filters.eq(TYPE, legacy.get(TYPE)),
+                        Filters.eq(VALUE, legacy.get(VALUE)), Filters.eq(URL, occurrence.getKey())),
+                        Updates.set(COUNT, occurrence.getValue()), options));
+                if (batch.size() == MIGRATION_BATCH_SIZE) {
+                    collection.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                collection.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+                batch.clear();
+            }
+            dataCollection.updateOne(Filters.eq("_id", legacy.get("_id")), Updates.unset(LEGACY_OCCURRENCES));
+        }
+    }
+}
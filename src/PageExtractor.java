@@ -0,0 +1,266 @@
+// 10.15.2026
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Elements;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the values of each {@link Scraper.DataType} from a parsed page. It holds nothing but the domain's compiled
+ * {@link ExtractorPatterns}, so it needs no db and any number of threads may use one extractor at once; the scraper
+ * uses it for every page it processes, and the benchmarks use it on their own.
+ */
+public class PageExtractor {
+    private final ExtractorPatterns patterns;
+
+    /**
+     * @param domain used to differentiate between internal and external urls
+     */
+    public PageExtractor(String domain) {
+        this.patterns = ExtractorPatterns.forDomain(domain);
+    }
+
+    /**
+     * Extract all data types from the page.
+     *
+     * @param page the page to extract from
+     * @return a 2D HashMap mapping each DataType to a HashMap that maps the data item to the number of times it was
+     * found on the page.
+     */
+    public HashMap<Scraper.DataType, HashMap<String, Integer>> extractPageData(Document page) {
+        return extractPageData(page, null);
+    }
+
+    /**
+     * Extract all data types from the page, measuring the time spent in each extractor.
+     *
+     * @param page         the page to extract from
+     * @param extractNanos the time spent in each extractor, added to under the name of each text pattern's DataType,
+     *                     "ImageUrl" and "Links", or null to not measure it
+     * @return a 2D HashMap mapping each DataType to a HashMap that maps the data item to the number of times it was
+     * found on the page.
+     */
+    HashMap<Scraper.DataType, HashMap<String, Integer>> extractPageData(Document page, Map<String, Long> extractNanos) {
+        HashMap<Scraper.DataType, HashMap<String, Integer>> pageData = new HashMap<>();
+        if (page != null) {
+            // Address, UsDate and CourseCode
+            pageData.putAll(extractItemsMatchingPatterns(page, patterns.getTextPatterns(), extractNanos));
+
+            // Extract all url data types and add it to the pageData HashMap.
+            mergeAndIncrementDuplicatesInMaps(pageData, extractAllUrlTypes(page, extractNanos));
+        }
+        return pageData;
+    }
+
+    /**
+     * Extract the different types of urls found on the page. Includes internal, external, phone number, email, and
+     * image urls.
+     *
+     * @param page the page to extract the urls from
+     * @return a 2D HashMap mapping each DataType to a HashMap that maps the data to the number of times it was
+     * found on the page.
+     */
+    public HashMap<Scraper.DataType, HashMap<String, Integer>> extractAllUrlTypes(Document page) {
+        return extractAllUrlTypes(page, null);
+    }
+
+    /**
+     * Extract all items on the page that match the domain's text patterns (Address, UsDate and CourseCode).
+     *
+     * @param doc the page to extract from
+     * @return a 2D HashMap mapping each DataType to a HashMap that maps each value found to the number of times it was
+     * found on the page.
+     */
+    public HashMap<Scraper.DataType, HashMap<String, Integer>> extractItemsMatchingPatterns(Document doc) {
+        return extractItemsMatchingPatterns(doc, patterns.getTextPatterns(), null);
+    }
+
+    /**
+     * Extract the different types of urls found on the page. Includes internal, external, phone number, email, and
+     * image urls.
+     *
+     * @param page         the page to extract the urls from
+     * @param extractNanos the time spent in each extractor, added to under "ImageUrl" and "Links" (the links of all
+     *                     the other types are classified together), or null to not measure it
+     * @return a 2D HashMap mapping each DataType to a HashMap that maps the data to the number of times it was
+     * found on the page.
+     */
+    HashMap<Scraper.DataType, HashMap<String, Integer>> extractAllUrlTypes(Document page,
+                                                                           Map<String, Long> extractNanos) {
+        HashMap<Scraper.DataType, HashMap<String, Integer>> pageData = new HashMap<>();
+
+        long start = extractNanos != null ? System.nanoTime() : 0;
+        pageData.put(Scraper.DataType.ImageUrl, extractImageUrls(page));
+        if (extractNanos != null) {
+            long end = System.nanoTime();
+            extractNanos.merge(Scraper.DataType.ImageUrl.name(), end - start, Long::sum);
+            start = end;
+        }
+
+        // Get all links contained in <a> elements as full (absolute) urls without their anchors (the part after #)
+        Elements links = page.select("a[href]");
+        HashMap<String, Integer> absoluteUrls = new HashMap<>();
+        links.forEach(url -> {
+            String absoluteUrl = url.absUrl("href");
+            String pageUrlWithoutAnchor = absoluteUrl.contains("#")
+                    ? absoluteUrl.substring(0, absoluteUrl.indexOf("#")) : absoluteUrl;
+            if (!absoluteUrls.containsKey(pageUrlWithoutAnchor)) {
+                absoluteUrls.put(pageUrlWithoutAnchor, 1);
+            } else {
+                absoluteUrls.put(pageUrlWithoutAnchor, absoluteUrls.get(pageUrlWithoutAnchor) + 1);
+            }
+        });
+
+        HashMap<String, Integer> internalUrls = new HashMap<>();
+        HashMap<String, Integer> externalUrls = new HashMap<>();
+        HashMap<String, Integer> emailUrls = new HashMap<>();
+        HashMap<String, Integer> phoneNumberUrls = new HashMap<>();
+        HashMap<String, Integer> unknownUrls = new HashMap<>();
+
+        // Collect each link as the appropriate DataType
+        for (String url : absoluteUrls.keySet()) {
+            Matcher internalUrlMatcher = patterns.getInternalUrl().matcher(url);
+            Matcher externalUrlMatcher = patterns.getExternalUrl().matcher(url);
+            Matcher emailUrlMatcher = patterns.getEmail().matcher(url);
+            Matcher phoneNumberUrlMatcher = patterns.getPhoneNumber().matcher(url);
+
+            int numOccurrencesOnPage = absoluteUrls.get(url);
+            if (internalUrlMatcher.matches()) {
+                internalUrls.put(url, numOccurrencesOnPage);
+            } else if (externalUrlMatcher.matches()) {
+                externalUrls.put(url, numOccurrencesOnPage);
+            } else if (emailUrlMatcher.matches()) {
+                emailUrls.put(url, numOccurrencesOnPage);
+            } else if (phoneNumberUrlMatcher.matches()) {
+                phoneNumberUrls.put(url, numOccurrencesOnPage);
+            } else {
+                unknownUrls.put(url, numOccurrencesOnPage);
+            }
+        }
+
+        // Pack and return
+        pageData.put(Scraper.DataType.InternalUrl, internalUrls);
+        pageData.put(Scraper.DataType.ExternalUrl, externalUrls);
+        pageData.put(Scraper.DataType.EmailAddress, emailUrls);
+        pageData.put(Scraper.DataType.PhoneNumber, phoneNumberUrls);
+        pageData.put(Scraper.DataType.UnknownUrls, unknownUrls);
+        if (extractNanos != null) {
+            extractNanos.merge("Links", System.nanoTime() - start, Long::sum);
+        }
+        return pageData;
+    }
+
+    /**
+     * Extract the image urls found on the page.
+     *
+     * @param page the page to extract from
+     * @return a HashMap mapping each image url found to the number of times it was found
+     */
+    public HashMap<String, Integer> extractImageUrls(Document page) {
+        Elements images = page.select("img[src]");
+        HashMap<String, Integer> imageLinks = new HashMap<>();
+        images.forEach(link -> {
+            String absoluteLink = link.absUrl("src");
+            if (!imageLinks.containsKey(absoluteLink)) {
+                imageLinks.put(absoluteLink, 1);
+            } else {
+                imageLinks.put(absoluteLink, imageLinks.get(absoluteLink) + 1);
+            }
+        });
+        return imageLinks;
+    }
+
+    /**
+     * Extract all items on the page that match any of the given regex patterns, in a single pass over the page's text.
+     * Each run of text (consecutive text nodes, including ones only separated by <code>&lt;br&gt;</code>s) is matched
+     * against every pattern once, and every match in it is counted.
+     *
+     * @param doc          the page to extract from
+     * @param itemPatterns the patterns to extract matching text with, by the DataType each extracts
+     * @param extractNanos the time spent in each extractor, added to under each pattern's DataType, or null to not
+     *                     measure it
+     * @return a 2D HashMap mapping each DataType to a HashMap that maps each value found to the number of times it was
+     * found on the page.
+     */
+    HashMap<Scraper.DataType, HashMap<String, Integer>> extractItemsMatchingPatterns(Document doc,
+            Map<Scraper.DataType, Pattern> itemPatterns, Map<String, Long> extractNanos) {
+        HashMap<Scraper.DataType, HashMap<String, Integer>> data = new HashMap<>();
+        itemPatterns.keySet().forEach(type -> data.put(type, new HashMap<>()));
+        StringBuilder textRun = new StringBuilder();
+
+        // For each match found, add it to the HashMap of its type, incrementing the int value if it was already there.
+        Runnable matchTextRun = () -> {
+            if (!textRun.isEmpty()) {
+                itemPatterns.forEach((type, pattern) -> {
+                    long start = extractNanos != null ? System.nanoTime() : 0;
+                    Matcher matcher = pattern.matcher(textRun);
+                    while (matcher.find()) {
+                        data.get(type).merge(matcher.group(), 1, Integer::sum);
+                    }
+                    if (extractNanos != null) {
+                        extractNanos.merge(type.name(), System.nanoTime() - start, Long::sum);
+                    }
+                });
+                textRun.setLength(0);
+            }
+        };
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                if (node instanceof TextNode textNode) {
+                    textRun.append(textNode.text());
+                } else if (node instanceof Element element) {
+                    if (element.normalName().equals("br")) {
+                        textRun.append(' ');
+                    } else {
+                        matchTextRun.run();
+                    }
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+                if (node instanceof Element element && !element.normalName().equals("br")) {
+                    matchTextRun.run();
+                }
+            }
+        }, doc);
+        matchTextRun.run();
+        return data;
+    }
+
+    /**
+     * Merge 2 - 2D HashMaps into one, joining the inner maps by incrementing their (integer) values for
+     * each new duplicate caused by the merge. The inner map is some Data type mapped to an integer that counts the
+     * number of times the key occurred.
+     *
+     * @param originalMap the original map to merge into
+     * @param mapToAdd    the map to add the items from
+     */
+    private <T, U> void mergeAndIncrementDuplicatesInMaps(HashMap<T, HashMap<U, Integer>> originalMap,
+                                                          HashMap<T, HashMap<U, Integer>> mapToAdd) {
+        mapToAdd.forEach((k, v) -> originalMap.merge(k, v, (originalValues, mapToAddValues) -> {
+            HashMap<U, Integer> originalCopy = new HashMap<>(originalValues);
+            HashMap<U, Integer> mapToAddCopy = new HashMap<>(mapToAddValues);
+            mergeAndIncrementDuplicates(originalCopy, mapToAddCopy);
+            return originalCopy;
+        }));
+    }
+
+    /**
+     * Merge 2 maps, incrementing the Integer value for each new duplicate caused by the merge.
+     *
+     * @param original the original map to merge into
+     * @param add      the map to add the items from
+     */
+    private <U> void mergeAndIncrementDuplicates(HashMap<U, Integer> original, HashMap<U, Integer> add) {
+        add.forEach((k, v) -> original.merge(k, v, Integer::sum));
+    }
+}
@@ -0,0 +1,208 @@
+// 10.15.2026
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A downloaded page waiting to be scraped, kept as its url and either its gzip-compressed raw body or the hash its body
+ * is stored under in a {@link PageStore}, rather than as a parsed <code>Document</code>. HTML typically compresses to a
+ * fifth of its size, and a parsed DOM takes several times the size of the HTML, so a queue of handles is far smaller
+ * than a queue of documents. The page is only parsed when {@link #parse()} is called, by the scraper thread that
+ * processes it.
+ * <p>
+ * A handle may also hold nothing but the url, for pages queued before their bodies were stored; those can't be parsed,
+ * and are handed back to the crawler to download again. A handle for a page found to be unchanged since it was last
+ * fetched holds no body either, as there's nothing new to scrape.
+ */
+public final class PageHandle {
+    private final String url;
+    private final String requestedUrl;  // the url asked for, before any redirects
+    private final byte[] compressedBody;  // null if the body is in the page store, or not held at all
+    private final PageStore pageStore;
+    private final String contentHash;  // the hash of the body in the page store, if it's there
+    private final String charsetName;  // null to detect it from the page itself
+    private final PageValidators validators;  // null if the page wasn't just fetched
+    private final boolean unchanged;
+
+    private PageHandle(String url, String requestedUrl, byte[] compressedBody, PageStore pageStore, String contentHash,
+                       String charsetName, PageValidators validators, boolean unchanged) {
+        this.url = url;
+        this.requestedUrl = requestedUrl;
+        this.compressedBody = compressedBody;
+        this.pageStore = pageStore;
+        this.contentHash = contentHash;
+        this.charsetName = charsetName;
+        this.validators = validators;
+        this.unchanged = unchanged;
+    }
+
+    /**
+     * Create a handle for a downloaded page, compressing its body.
+     *
+     * @param url          the url the page was downloaded from (after any redirects)
+     * @param requestedUrl the url the page was asked for by (before any redirects)
+     * @param body         the raw bytes of the page
+     * @param charsetName  the page's charset if the server declared one; otherwise null
+     * @param validators   what to check the page against the next time it's fetched, or null
+     * @return the handle
+     */
+    public static PageHandle fromBody(String url, String requestedUrl, byte[] body, String charsetName,
+                                      PageValidators validators) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // can't happen writing to memory
+        }
+        return new PageHandle(url, requestedUrl, compressed.toByteArray(), null, null, charsetName, validators, false);
+    }
+
+    /**
+     * Create a handle for a page whose body is in the page store.
+     *
+     * @param url          the url the page was downloaded from (after any redirects)
+     * @param requestedUrl the url the page was asked for by (before any redirects)
+     * @param pageStore    the store holding the page's body
+     * @param contentHash  the hash the body is stored under
+     * @param charsetName  the page's charset if the server declared one; otherwise null
+     * @param validators   what to check the page against the next time it's fetched, or null
+     * @return the handle
+     */
+    public static PageHandle fromStore(String url, String requestedUrl, PageStore pageStore, String contentHash,
+                                       String charsetName, PageValidators validators) {
+        return new PageHandle(url, requestedUrl, null, pageStore, contentHash, charsetName, validators, false);
+    }
+
+    /**
+     * Create a handle for a page whose body isn't held anywhere. It can't be parsed; the page must be downloaded again.
+     *
+     * @param url          the url of the page
+     * @param requestedUrl the url the page was asked for by when it was first downloaded (before any redirects)
+     * @return the handle
+     */
+    public static PageHandle fromUrl(String url, String requestedUrl) {
+        return new PageHandle(url, requestedUrl, null, null, null, null, null, false);
+    }
+
+    /**
+     * Create a handle for a page that hasn't changed since it was last fetched, either because the server said so or
+     * because its body is the same. It holds no body and can't be parsed.
+     *
+     * @param url          the url of the page
+     * @param requestedUrl the url the page was asked for by (before any redirects)
+     * @param validators   what to check the page against the next time it's fetched
+     * @return the handle
+     */
+    public static PageHandle unchanged(String url, String requestedUrl, PageValidators validators) {
+        return new PageHandle(url, requestedUrl, null, null, null, null, validators, true);
+    }
+
+    /**
+     * Parse the page, decompressing its body as it's read.
+     *
+     * @return the parsed page
+     * @throws IOException if the body can't be read
+     */
+    public Document parse() throws IOException {
+        if (unchanged) {
+            throw new IllegalStateException("An unchanged page has no body to parse: " + url);
+        }
+        if (compressedBody == null && contentHash == null) {
+            throw new IllegalStateException("The page's body isn't held, so it must be downloaded again: " + url);
+        }
+        try (InputStream in = compressedBody != null
+                ? new GZIPInputStream(new ByteArrayInputStream(compressedBody))
+                : pageStore.open(contentHash)) {
+            return Jsoup.parse(in, charsetName, url);
+        }
+    }
+
+    /**
+     * Let go of the page's body in the page store, deleting it if no other page waiting to be scraped holds it. Called
+     * once the page is scraped, or dropped without being scraped.
+     */
+    public void release() {
+        if (pageStore != null && contentHash != null) {
+            pageStore.release(contentHash);
+        }
+    }
+
+    /**
+     * Get the url the page was downloaded from
+     *
+     * @return the page's url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Get the url the page was asked for, which differs from {@link #getUrl()} if the request was redirected
+     *
+     * @return the url the page was requested by
+     */
+    public String getRequestedUrl() {
+        return requestedUrl;
+    }
+
+    /**
+     * Get the hash the page's body is stored under in the page store
+     *
+     * @return the hash of the page's body, or null if it isn't in the page store
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Get the page's declared charset
+     *
+     * @return the charset the server declared for the page, or null if it didn't declare one
+     */
+    public String getCharsetName() {
+        return charsetName;
+    }
+
+    /**
+     * Get what to check the page against the next time it's fetched
+     *
+     * @return the page's validators, or null if it wasn't just fetched
+     */
+    public PageValidators getValidators() {
+        return validators;
+    }
+
+    /**
+     * Indicate if the page's body is held, in memory or in the page store, so that it can be parsed.
+     *
+     * @return <code>true</code> if the page's body is held; otherwise <code>false</code>.
+     */
+    public boolean hasBody() {
+        return compressedBody != null || contentHash != null;
+    }
+
+    /**
+     * Indicate if the page is unchanged since it was last fetched.
+     *
+     * @return <code>true</code> if the page is unchanged; otherwise <code>false</code>.
+     */
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Get the size of the page's body held in memory
+     *
+     * @return the number of bytes held in memory for the page
+     */
+    public int getCompressedSize() {
+        return compressedBody != null ? compressedBody.length : 0;
+    }
+}
@@ -0,0 +1,159 @@
+// 10.15.2026
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local, content-addressed store of downloaded page bodies. Each body is gzip-compressed into a file named after the
+ * SHA-256 hash of its (uncompressed) content, so identical pages are only stored once and a body can be found again
+ * from its hash alone. Pages waiting to be scraped only need to keep their hash; after a restart they're read back from
+ * here instead of being downloaded again.
+ * <p>
+ * Files are written to a temporary name and then moved into place, so a crash never leaves a partial body under a
+ * valid hash.
+ * <p>
+ * A body is only kept while a page waiting to be scraped holds it: each page stored or reloaded takes a reference to
+ * its body, and the body is deleted once the last page holding it lets go of it (see {@link #release}). The WARC
+ * archive keeps a copy of every body fetched. The references are counted in memory and are taken again for the pages
+ * reloaded after a restart.
+ */
+public class PageStore {
+    private static final String SUFFIX = ".html.gz";
+
+    private final Path directory;
+    // The number of pages waiting to be scraped that hold each body. A body's file is only written or deleted under
+    // its entry's lock, so a body stored again just as it's released is never lost.
+    private final ConcurrentHashMap<String, Integer> references = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory the directory to keep the bodies in, created if it doesn't exist
+     * @throws IOException if the directory can't be created
+     */
+    public PageStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Store a page body, unless an identical body is already stored, and take a reference to it.
+     *
+     * @param body the raw bytes of the page
+     * @return the hash the body is stored under
+     * @throws IOException if the body can't be written
+     */
+    public String put(byte[] body) throws IOException {
+        String hash = hashOf(body);
+        try {
+            references.compute(hash, (h, count) -> {
+                write(h, body);
+                return count != null ? count + 1 : 1;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return hash;
+    }
+
+    /**
+     * Take a reference to a body already stored, for a page reloaded to be scraped after a restart.
+     *
+     * @param hash the hash the body is stored under
+     */
+    public void retain(String hash) {
+        references.merge(hash, 1, Integer::sum);
+    }
+
+    /**
+     * Let go of a reference to a body, deleting the body if no other page holds it.
+     *
+     * @param hash the hash the body is stored under
+     */
+    public void release(String hash) {
+        references.computeIfPresent(hash, (h, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            try {
+                Files.deleteIfExists(pathFor(h));
+            } catch (IOException e) {
+                System.out.println("Error deleting page body " + h + " - it's left in the store. " + e.getMessage());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Open a stored page body for reading, decompressing it as it's read.
+     *
+     * @param hash the hash the body is stored under
+     * @return a stream of the body's raw bytes
+     * @throws IOException if there's no body stored under the hash or it can't be read
+     */
+    public InputStream open(String hash) throws IOException {
+        return new GZIPInputStream(Files.newInputStream(pathFor(hash)));
+    }
+
+    /**
+     * Indicate if a body is stored under the hash.
+     *
+     * @param hash the hash
+     * @return <code>true</code> if a body is stored under the hash; otherwise <code>false</code>.
+     */
+    public boolean contains(String hash) {
+        return Files.exists(pathFor(hash));
+    }
+
+    /**
+     * Write a body to its file, unless it's already there.
+     */
+    private void write(String hash, byte[] body) {
+        Path file = pathFor(hash);
+        if (Files.exists(file)) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), hash, ".tmp");
+            try {
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                    out.write(body);
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Files are spread over subdirectories named after the first two characters of their hash, so that no single
+     * directory grows too large.
+     */
+    private Path pathFor(String hash) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash + SUFFIX);
+    }
+
+    /**
+     * Get the hash a body is (or would be) stored under
+     *
+     * @param body the raw bytes of the page
+     * @return the SHA-256 hash of the body, in hex
+     */
+    public static String hashOf(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be available on every Java platform", e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+// 10.15.2026
+
+/**
+ * What's known about the last version of a page that was fetched: its <code>ETag</code> and
+ * <code>Last-Modified</code> headers, if the server sent them, and the hash of its body. When a page is fetched again
+ * the headers are sent back as <code>If-None-Match</code> and <code>If-Modified-Since</code>, so the server can answer
+ * with a bodyless <code>304 Not Modified</code>; servers that don't support that are caught by the body's hash instead.
+ */
+public final class PageValidators {
+    // The fields of an url's document the validators are kept in
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String CONTENT_HASH = "contentHash";
+
+    private final String etag;
+    private final String lastModified;
+    private final String contentHash;
+
+    /**
+     * @param etag         the page's <code>ETag</code> header, or null if it had none
+     * @param lastModified the page's <code>Last-Modified</code> header, or null if it had none
+     * @param contentHash  the SHA-256 hash of the page's body, or null if it isn't known
+     */
+    public PageValidators(String etag, String lastModified, String contentHash) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Read the validators kept in an url's document.
+     *
+     * @param urlDocument the url's document, or null if there isn't one
+     * @return the validators, or null if none are kept in the document
+     */
+    public static PageValidators fromDocument(org.bson.Document urlDocument) {
+        if (urlDocument == null || !(urlDocument.containsKey(ETAG) || urlDocument.containsKey(LAST_MODIFIED)
+                || urlDocument.containsKey(CONTENT_HASH))) {
+            return null;
+        }
+        return new PageValidators(urlDocument.getString(ETAG), urlDocument.getString(LAST_MODIFIED),
+                urlDocument.getString(CONTENT_HASH));
+    }
+
+    /**
+     * Get the fields to keep the validators in, in an url's document
+     *
+     * @return the validators as document fields
+     */
+    public org.bson.Document toDocument() {
+        return new org.bson.Document(ETAG, etag).append(LAST_MODIFIED, lastModified).append(CONTENT_HASH, contentHash);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+}
@@ -0,0 +1,152 @@
+// 10.15.2026
+
+import java.io.InputStream;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * The interactive results display, run on its own thread so that waiting for someone to type never holds up the
+ * crawl. It only reads the scraper's results from the db and the latest {@link CrawlStats} snapshot it's given, so it
+ * can be left at a prompt for as long as anyone likes. If its input ends (e.g. when run with no terminal attached),
+ * the console simply stops and the crawl carries on.
+ */
+public class ResultsConsole {
+    private final Scraper scraper;
+    private final Supplier<CrawlStats> latestStats;
+    private final Scanner scanner;
+    private final int displayColumnWidth;
+    private final int displayPageSize;
+    private Thread thread;
+
+    /**
+     * @param scraper            the scraper whose results are displayed
+     * @param latestStats        gives the latest snapshot of the crawl's progress
+     * @param input              where the commands are read from
+     * @param displayColumnWidth the width of the results table
+     * @param displayPageSize    the number of values of each type shown at a time
+     */
+    public ResultsConsole(Scraper scraper, Supplier<CrawlStats> latestStats, InputStream input, int displayColumnWidth,
+                          int displayPageSize) {
+        this.scraper = scraper;
+        this.latestStats = latestStats;
+        this.scanner = new Scanner(input);
+        this.displayColumnWidth = displayColumnWidth;
+        this.displayPageSize = displayPageSize;
+    }
+
+    /**
+     * Start reading commands on the console's own thread. It's a daemon thread, so it never keeps the program running
+     * after the crawl finishes.
+     */
+    public void start() {
+        thread = new Thread(this::run, "results-console");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (true) {
+            System.out.print("""
+                    "All" - all info
+                    "A" - addresses
+                    "C" - course codes
+                    "D" - (us) dates
+                    "E" - emails
+                    "EU" - external URLs
+                    "I" - image links
+                    "IU" - internal URLs
+                    "P" - phone numbers
+                    "S" - crawl status
+                    Type one of the above to see the corresponding info:\s""");
+            String input = readLine();
+            if (input == null) {
+                return;
+            }
+            List<Scraper.DataType> dataTypesToDisplay = new ArrayList<>();
+            switch (input.toUpperCase()) {
+                case "ALL" -> dataTypesToDisplay.addAll(List.of(Scraper.DataType.values()));
+                case "A" -> dataTypesToDisplay.add(Scraper.DataType.Address);
+                case "C" -> dataTypesToDisplay.add(Scraper.DataType.CourseCode);
+                case "D" -> dataTypesToDisplay.add(Scraper.DataType.UsDate);
+                case "E" -> dataTypesToDisplay.add(Scraper.DataType.EmailAddress);
+                case "EU" -> dataTypesToDisplay.add(Scraper.DataType.ExternalUrl);
+                case "I" -> dataTypesToDisplay.add(Scraper.DataType.ImageUrl);
+                case "IU" -> dataTypesToDisplay.add(Scraper.DataType.InternalUrl);
+                case "P" -> dataTypesToDisplay.add(Scraper.DataType.PhoneNumber);
+                case "S" -> displayStatus();
+                default -> System.out.println("No valid input received. Not displaying any results.");
+            }
+            if (!dataTypesToDisplay.isEmpty() && !displayResults(dataTypesToDisplay)) {
+                return;
+            }
+        }
+    }
+
+    private void displayStatus() {
+        CrawlStats stats = latestStats.get();
+        System.out.println("-".repeat(75));
+        if (stats == null) {
+            System.out.println("///    The crawl hasn't reported its status yet.");
+        } else {
+            stats.toStatusLines().forEach(System.out::println);
+            long ageSeconds = (System.currentTimeMillis() - stats.getCapturedAtMs()) / 1000;
+            System.out.println("///    (as of " + ageSeconds + " seconds ago)");
+        }
+        System.out.println("-".repeat(75));
+    }
+
+    /**
+     * Display each type's values a page at a time, the most found first, printing them as they're read.
+     *
+     * @return <code>true</code> if the console should carry on; <code>false</code> if its input ended.
+     */
+    private boolean displayResults(List<Scraper.DataType> dataTypesToDisplay) {
+        HashMap<Scraper.DataType, Long> numOfDataTypeFound = new HashMap<>();
+        for (Scraper.DataType type : dataTypesToDisplay) {
+            long numItems = scraper.countValues(type);
+            numOfDataTypeFound.put(type, numItems);
+            System.out.println("\nFound " + numItems + " unique " + type + "s:");
+            System.out.println("-".repeat(displayColumnWidth));
+            System.out.println(String.format("%-" + (displayColumnWidth - 18) + "." +
+                    (displayColumnWidth - 18) + "s", type) + "|" +
+                    String.format("%-15s", "\sNumber found"));
+            System.out.println("-".repeat(displayColumnWidth));
+            org.bson.Document lastShown = null;
+            long numShown = 0;
+            while (true) {
+                List<org.bson.Document> page = scraper.getValuesPage(type, lastShown, displayPageSize);
+                for (org.bson.Document doc : page) {
+                    System.out.println(String.format("%-" + (displayColumnWidth - 18) + "." +
+                            (displayColumnWidth - 18) + "s", doc.get("value")) + "|" +
+                            String.format("%15s", doc.get("totalInstances")));
+                }
+                numShown += page.size();
+                if (page.size() < displayPageSize || numShown >= numItems) {
+                    break;
+                }
+                lastShown = page.get(page.size() - 1);
+                System.out.print("Showing " + numShown + " of " + numItems + " " + type +
+                        "s. Type \"M\" to see more, or anything else to move on:\s");
+                String input = readLine();
+                if (input == null) {
+                    return false;
+                }
+                if (!input.equalsIgnoreCase("M")) {
+                    break;
+                }
+            }
+        }
+        System.out.println("-".repeat(displayColumnWidth));
+        numOfDataTypeFound.forEach((type, numItems) ->
+                System.out.println("Found " + numItems + " unique " + type + "s."));
+        System.out.println("-".repeat(displayColumnWidth));
+        return true;
+    }
+
+    /**
+     * @return the next line typed, or null if the input ended
+     */
+    private String readLine() {
+        return scanner.hasNextLine() ? scanner.nextLine() : null;
+    }
+}
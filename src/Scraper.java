@@ -1,23 +1,32 @@
 // 5.30.2023
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
 import com.mongodb.client.*;
-import com.mongodb.client.model.Projections;
-import com.mongodb.client.model.UpdateOptions;
-import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.*;
 import org.bson.conversions.Bson;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 
 import static com.mongodb.client.model.Sorts.*;
 
 /**
  * The scraper processes and extracts all relevant information from the provided web pages (supplied by the crawler).
+ * Pages may be queued from the crawler's download threads while the scraper is processing others, and several threads
+ * may process pages at once. The queue of pages waiting to be scraped is bounded: once it's full, queueing another page
+ * waits until there's room, which in turn holds up the crawler's downloads.
  */
 public class Scraper {
 
@@ -28,143 +37,479 @@ public class Scraper {
         InternalUrl, ExternalUrl, ImageUrl, PhoneNumber, EmailAddress, Address, UsDate, CourseCode, UnknownUrls
     }
 
+    public static final int DEFAULT_MAX_QUEUED_PAGES = 64;
+    // Serves the values of each type ordered by how many times they were found
+    private static final Bson VALUES_BY_TOTAL_INDEX = Indexes.compoundIndex(Indexes.ascending("type"),
+            Indexes.descending("totalInstances"), Indexes.ascending("value"));
+    private static final int VALUES_BATCH_SIZE = 1000;
+    // The fields of a page's url document that locate its body in the page store
+    private static final String CONTENT_HASH = "contentHash";
+    private static final String CHARSET = "charset";
+    // The url the crawler asked for the page by, if it was redirected, which the crawler knows the page by
+    private static final String REQUESTED_URL = "requestedUrl";
+
     private final MongoCollection<org.bson.Document> dataCollection;  // holds the data scraped from all pages
-    private final MongoCollection<org.bson.Document> urlsCollection;  // holds the urls to be visited and the urls already visited
-    private final org.bson.Document urlsToVisitFilter = new org.bson.Document().append("type", "toVisit");
-    private final org.bson.Document visitedUrlsFilter = new org.bson.Document().append("type", "visited");
-    private final String domainRegex;
-    private final LinkedList<Document> pagesToVisit;
-    private final HashSet<String> pagesVisited;
-    // Contains the hashcodes of all page urls that either will be or were visited so that we don't visit any page more than once.
-    private final HashSet<Integer> allEncounteredPageUrls;
+    private final OccurrenceStore occurrenceStore;  // holds the number of times each value was found on each page
+    private final UrlStore urlStore;  // holds the urls to be visited and the urls already visited
+    // Its patterns are compiled once per domain, and shared between the scraper threads
+    private final PageExtractor extractor;
+    // Filled by the crawler's download threads. Holds each page's url and compressed body; pages are parsed only once
+    // a scraper thread takes them off the queue.
+    private final BlockingQueue<PageHandle> pagesToVisit;
+    private final AtomicLong numQueuedPageBytes = new AtomicLong();
+    private final AtomicInteger numPagesVisited;
+    // Contains the fingerprints of all page urls that either will be or were visited so that we don't visit any page
+    // more than once.
+    private final FingerprintSet allEncounteredPageUrls;
+    private final AtomicInteger numPagesPending = new AtomicInteger();  // queued or still being processed
+    // The pages whose bodies were lost and that were handed back to the crawler to download again, by the url they
+    // were asked for by. The page url each maps to is left to be visited until the page comes back.
+    private final Map<String, String> urlsToRefetch = new ConcurrentHashMap<>();
+    private final Path snapshotFile;  // null if the urls aren't snapshotted
+    // How many values were stored, and in how many requests to the db
+    private final AtomicLong numDataValuesWritten = new AtomicLong();
+    private final AtomicLong numDataWriteRoundTrips = new AtomicLong();
+    // null if there are no metrics to record
+    private final Metrics.Histogram extractCpuSeconds;
+    private final Metrics.Histogram writeSeconds;
 
 
+    /**
+     * Builds a scraper. Only the domain and the data and urls collections are required; everything else is optional and
+     * left off (or given its default) unless it's set.
+     */
+    public static class Builder {
+        private final String domain;
+        private final MongoCollection<org.bson.Document> dataCollection;
+        private final MongoCollection<org.bson.Document> urlsCollection;
+        private MongoCollection<org.bson.Document> occurrencesCollection;
+        private int maxQueuedPages = DEFAULT_MAX_QUEUED_PAGES;
+        private PageStore pageStore;
+        private WriteBehindBuffer writeBuffer;
+        private Metrics metrics;
+        private Path snapshotFile;
+
+        /**
+         * @param domain         used to differentiate between internal and external urls. internal urls will be given
+         *                       to the crawler to download and subsequently handed back to the scraper.
+         * @param dataCollection the MongoDB collection of all retrieved data
+         * @param urlsCollection the MongoDB collection of the urls left to visit and the urls already visited
+         */
+        public Builder(String domain, MongoCollection<org.bson.Document> dataCollection,
+                       MongoCollection<org.bson.Document> urlsCollection) {
+            this.domain = domain;
+            this.dataCollection = dataCollection;
+            this.urlsCollection = urlsCollection;
+        }
+
+        /**
+         * @param occurrencesCollection the MongoDB collection of the number of times each value was found on each
+         *                              page, or null to only keep each value's total. Without it, a page scraped again
+         *                              (as in a recrawl) has its values counted again.
+         */
+        public Builder occurrencesCollection(MongoCollection<org.bson.Document> occurrencesCollection) {
+            this.occurrencesCollection = occurrencesCollection;
+            return this;
+        }
+
+        /**
+         * @param maxQueuedPages the maximum number of pages waiting to be scraped before queueing another one waits;
+         *                       <code>DEFAULT_MAX_QUEUED_PAGES</code> by default. Pages left over from a previous run
+         *                       are always reloaded, even if there are more of them.
+         */
+        public Builder maxQueuedPages(int maxQueuedPages) {
+            this.maxQueuedPages = maxQueuedPages;
+            return this;
+        }
+
+        /**
+         * @param pageStore the store the downloaded page bodies are kept in, or null if they aren't kept. Pages left
+         *                  over from a previous run whose bodies aren't in the store are downloaded again when scraped.
+         */
+        public Builder pageStore(PageStore pageStore) {
+            this.pageStore = pageStore;
+            return this;
+        }
+
+        /**
+         * @param writeBuffer the buffer to hold the changes to the urls until they're written in bulk, or null to write
+         *                    each change straight away
+         */
+        public Builder writeBuffer(WriteBehindBuffer writeBuffer) {
+            this.writeBuffer = writeBuffer;
+            return this;
+        }
+
+        /**
+         * @param metrics the metrics to record the time spent extracting each type and writing to the db in, or null
+         *                to not record them
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @param snapshotFile the file to load the urls from and save them to with {@link #saveSnapshot()}, or null to
+         *                     always load them from the db
+         */
+        public Builder snapshotFile(Path snapshotFile) {
+            this.snapshotFile = snapshotFile;
+            return this;
+        }
+
+        /**
+         * Create the scraper, loading any previously encountered urls.
+         *
+         * @return the scraper
+         */
+        public Scraper build() {
+            return new Scraper(this);
+        }
+    }
+
     /**
      * On instantiation load any previously encountered urls into their respective collections so that we can continue
      * from where we last left off.
      *
-     * @param domain         used to differentiate between internal and external urls. internal urls will be given to the crawler
-     *                       to download and subsequently handed back to the scraper.
+     * @param domain         used to differentiate between internal and external urls. internal urls will be given to
+     *                       the crawler to download and subsequently handed back to the scraper.
      * @param dataCollection the MongoDB collection of all retrieved data
      * @param urlsCollection the MongoDB collection of the urls left to visit and the urls already visited
      */
-    public Scraper(String domain, MongoCollection<org.bson.Document> dataCollection, MongoCollection<org.bson.Document> urlsCollection) {
-        this.domainRegex = domain.replace(".", "\\.");
-        this.dataCollection = dataCollection;
-        this.urlsCollection = urlsCollection;
-        this.pagesToVisit = new LinkedList<>();
-        this.pagesVisited = new HashSet<>();
-        this.allEncounteredPageUrls = new HashSet<>();
-
-        // Load all previously encountered urls from the db
-        Bson projection = Projections.fields(Projections.include("urls"), Projections.excludeId());
+    public Scraper(String domain, MongoCollection<org.bson.Document> dataCollection,
+                   MongoCollection<org.bson.Document> urlsCollection) {
+        this(new Builder(domain, dataCollection, urlsCollection));
+    }
 
+    /**
+     * On instantiation load any previously encountered urls into their respective collections so that we can continue
+     * from where we last left off, from the snapshot file if there is one. Pages left over from a previous run are
+     * queued again straight away without being read; their bodies are read from the page store only when each one is
+     * scraped.
+     */
+    private Scraper(Builder builder) {
+        this.extractor = new PageExtractor(builder.domain);
+        this.dataCollection = builder.dataCollection;
+        dataCollection.createIndex(VALUES_BY_TOTAL_INDEX);
+        this.occurrenceStore = builder.occurrencesCollection != null
+                ? new OccurrenceStore(builder.occurrencesCollection, dataCollection) : null;
+        this.urlStore = new UrlStore(builder.urlsCollection, builder.writeBuffer);
+        this.snapshotFile = builder.snapshotFile;
+        Metrics metrics = builder.metrics;
+        this.extractCpuSeconds = metrics != null ? metrics.histogram("scraper_extract_cpu_seconds",
+                "CPU time spent extracting values from a page, by extractor.", "extractor") : null;
+        this.writeSeconds = metrics != null ? metrics.mongoWriteSeconds() : null;
+        PageStore pageStore = builder.pageStore;
+
+        // Load all previously encountered urls
+        FrontierSnapshot snapshot = FrontierSnapshot.load(snapshotFile, urlStore, CONTENT_HASH, CHARSET, REQUESTED_URL);
+        this.allEncounteredPageUrls = snapshot.getFingerprints();
+        this.numPagesVisited = new AtomicInteger(snapshot.getNumVisited());
         // Pages to be visited
-        org.bson.Document urlsToVisit = urlsCollection.find(urlsToVisitFilter).projection(projection).first();
-        if (urlsToVisit != null) {
-            urlsToVisit.getList("urls", String.class).forEach(item -> {
-                try {
-                    this.pagesToVisit.add(Jsoup.connect(item).get());
-                } catch (IOException e) {
-                    System.out.println("Scraper error retrieving page from db url - page not queued for scraping. "
-                            + e.getMessage());
-                }
-            });
-        }
+        this.pagesToVisit = new LinkedBlockingQueue<>(Integer.max(builder.maxQueuedPages, snapshot.getNumToVisit()));
+        snapshot.forEachToVisit((item, fields) -> {
+            String contentHash = fields[0];
+            String requestedUrl = fields[2] != null ? fields[2] : item;
+            PageHandle page;
+            if (pageStore != null && contentHash != null && pageStore.contains(contentHash)) {
+                pageStore.retain(contentHash);
+                page = PageHandle.fromStore(item, requestedUrl, pageStore, contentHash, fields[1], null);
+            } else {
+                page = PageHandle.fromUrl(item, requestedUrl);
+            }
+            this.pagesToVisit.add(page);
+            this.numPagesPending.incrementAndGet();
+        });
+    }
+
 
-        // Pages already visited are added to the colored and visited urls collections
-        org.bson.Document visitedUrls = urlsCollection.find(visitedUrlsFilter).projection(projection).first();
-        if (visitedUrls != null) {
-            this.pagesVisited.addAll(visitedUrls.getList("urls", String.class));
-            this.pagesVisited.forEach(item -> this.allEncounteredPageUrls.add(item.hashCode()));
+    /**
+     * Retrieve the values of a type found so far that were found the most times, the most first (ties by value).
+     * Served from the <code>(type, totalInstances, value)</code> index, so only the rows returned are read.
+     *
+     * @param type  the type of values wanted
+     * @param limit the maximum number of values wanted
+     * @return the values, as documents of <code>type</code>, <code>value</code> and <code>totalInstances</code>
+     */
+    public FindIterable<org.bson.Document> getTopValues(DataType type, int limit) {
+        return findValues(Filters.eq("type", type)).limit(limit);
+    }
+
+    /**
+     * Retrieve a page of the values of a type found so far, in the same order as {@link #getTopValues}. Each page
+     * continues from the last value of the previous one (rather than skipping over the values before it), so every page
+     * costs the same however far in it is.
+     *
+     * @param type     the type of values wanted
+     * @param after    the last value of the previous page, or null for the first page
+     * @param pageSize the maximum number of values wanted
+     * @return the page of values, as documents of <code>type</code>, <code>value</code> and
+     * <code>totalInstances</code>; fewer than <code>pageSize</code> if it's the last page
+     */
+    public List<org.bson.Document> getValuesPage(DataType type, org.bson.Document after, int pageSize) {
+        Bson filter = Filters.eq("type", type);
+        if (after != null) {
+            Number total = after.get("totalInstances", Number.class);
+            filter = Filters.and(filter, Filters.or(Filters.lt("totalInstances", total),
+                    Filters.and(Filters.eq("totalInstances", total), Filters.gt("value", after.get("value")))));
         }
+        return findValues(filter).limit(pageSize).into(new ArrayList<>());
+    }
+
+    /**
+     * Pass every value of a type found so far to the action, in the same order as {@link #getTopValues}, streaming them
+     * from the db in batches rather than loading them all at once.
+     *
+     * @param type   the type of values wanted
+     * @param action the action to perform on each value's document
+     */
+    public void forEachValue(DataType type, Consumer<org.bson.Document> action) {
+        findValues(Filters.eq("type", type)).batchSize(VALUES_BATCH_SIZE).forEach(action);
     }
 
+    /**
+     * Get the number of distinct values of a type found so far
+     *
+     * @param type the type of values
+     * @return the number of values of that type
+     */
+    public long countValues(DataType type) {
+        return dataCollection.countDocuments(Filters.eq("type", type));
+    }
+
+    private FindIterable<org.bson.Document> findValues(Bson filter) {
+        Bson projection = Projections.fields(Projections.include("type"),
+                Projections.include("value"),
+                Projections.include("totalInstances"),
+                Projections.excludeId());
+        Bson orderBySort = orderBy(ascending("type"),
+                descending("totalInstances"),
+                ascending("value"));
+        return dataCollection.find(filter).projection(projection).sort(orderBySort).hint(VALUES_BY_TOTAL_INDEX);
+    }
 
     /**
-     * Retrieve all the data collected so far from the database.
+     * Retrieve the pages a value was found on from the database.
      *
-     * @return A HashMap with all the data, mapping each DataType to an iterable
+     * @param type  the value's type
+     * @param value the value
+     * @return the url of each page the value was found on with the number of times it was found there, the most first;
+     * or null if the pages values are found on aren't kept
      */
-    public HashMap<DataType, FindIterable<org.bson.Document>> getAllData() {
-        HashMap<DataType, FindIterable<org.bson.Document>> values = new HashMap<>();
-        for (DataType type : DataType.values()) {
-            org.bson.Document filter = new org.bson.Document().append("type", type);
-            Bson projection = Projections.fields(Projections.include("type"),
-                    Projections.include("value"),
-                    Projections.include("totalInstances"),
-                    Projections.excludeId());
-            Bson orderBySort = orderBy(ascending("type"),
-                    descending("totalInstances"),
-                    ascending("value"));
-            FindIterable<org.bson.Document> items = dataCollection.find(filter).projection(projection).sort(orderBySort);
-            values.put(type, items);
-        }
-        return values;
+    public FindIterable<org.bson.Document> getOccurrences(DataType type, String value) {
+        return occurrenceStore != null ? occurrenceStore.find(type, value) : null;
     }
 
     /**
-     * Add a page to be scraped to the collections in memory and the db.
+     * Add a page to be scraped to the collections in memory and the db. Safe to call from multiple threads. If the
+     * queue of pages waiting to be scraped is full, this waits until there's room.
      *
      * @param htmlPage the page to add
      * @return <code>true</code> if the operation was successful;
      * <code>false</code> otherwise.
      */
-    public boolean queuePage(Document htmlPage) {
-        if (!allEncounteredPageUrls.contains(htmlPage.hashCode())) {
-            // Add the url to the 'toVisit' document in the db
-            allEncounteredPageUrls.add(htmlPage.hashCode());
-
-            // In the db, store the url instead of the actual page to save space and so that we can reload the page
-            // more recently whenever it's actually evaluated
-            Bson updates = Updates.push("urls", htmlPage.location());
-            UpdateOptions options = new UpdateOptions().upsert(true);
-            urlsCollection.updateOne(urlsToVisitFilter, updates, options);
-            return pagesToVisit.add(htmlPage);
+    public boolean queuePage(PageHandle htmlPage) {
+        return queuePage(htmlPage, false);
+    }
+
+    /**
+     * Add a page to be scraped to the collections in memory and the db. Safe to call from multiple threads. If the
+     * queue of pages waiting to be scraped is full, this waits until there's room.
+     *
+     * @param htmlPage the page to add
+     * @param again    <code>true</code> to scrape the page even if it was already scraped, as when it changed since;
+     *                 otherwise <code>false</code>.
+     * @return <code>true</code> if the operation was successful;
+     * <code>false</code> otherwise.
+     */
+    public boolean queuePage(PageHandle htmlPage, boolean again) {
+        // Add the url's document to the db as to be visited
+        // In the db, store the url (and where the page's body is kept, if it is) instead of the actual page to save
+        // space, so that after a restart the page can be read back from the page store
+        org.bson.Document bodyLocation = new org.bson.Document();
+        if (htmlPage.getContentHash() != null) {
+            bodyLocation.append(CONTENT_HASH, htmlPage.getContentHash()).append(CHARSET, htmlPage.getCharsetName());
+        }
+        if (!htmlPage.getUrl().equals(htmlPage.getRequestedUrl())) {
+            bodyLocation.append(REQUESTED_URL, htmlPage.getRequestedUrl());
+        }
+        // A page downloaded again because its body was lost is still to be visited, so it's let through. If it moved
+        // since, the url it was lost under is done with.
+        String lostUrl = urlsToRefetch.remove(htmlPage.getRequestedUrl());
+        if (lostUrl != null && !lostUrl.equals(htmlPage.getUrl())) {
+            urlStore.markVisited(lostUrl);
+        }
+        // The url is marked while its fingerprint is held, so a snapshot never holds the fingerprint of an url that
+        // isn't (or won't be) in the db
+        synchronized (allEncounteredPageUrls) {
+            if (!allEncounteredPageUrls.add(UrlFingerprint.of(htmlPage.getUrl())) && !again && lostUrl == null) {
+                htmlPage.release();
+                return false;
+            }
+            if (again) {
+                urlStore.markToVisitAgain(htmlPage.getUrl(), bodyLocation);
+            } else if (!bodyLocation.isEmpty()) {
+                urlStore.markToVisit(htmlPage.getUrl(), bodyLocation);
+            } else {
+                urlStore.markToVisit(htmlPage.getUrl());
+            }
+        }
+        // Counted as pending before it's queued so that the page is always either pending or handed back to the crawler
+        numPagesPending.incrementAndGet();
+        numQueuedPageBytes.addAndGet(htmlPage.getCompressedSize());
+        try {
+            pagesToVisit.put(htmlPage);
+            return true;
+        } catch (InterruptedException e) {
+            numPagesPending.decrementAndGet();
+            numQueuedPageBytes.addAndGet(-htmlPage.getCompressedSize());
+            Thread.currentThread().interrupt();
+            return false;
         }
-        return false;
     }
 
     /**
-     * Process the next page: Extract all info, store it in the db, and queue any newly found internalUrls into the crawler.
+     * Process the next page: Extract all info, store it in the db, and queue any newly found internalUrls into the
+     * crawler.
      *
      * @param crawlerToQueueUrlsTo the crawler that the internal urls found should be added to
      * @return the url of the page processed if it is processed successfully; otherwise null.
      */
     public String processNext(Crawler crawlerToQueueUrlsTo) {
-        // Get the next page and set it as visited in memory and in the db
-        Document page = pagesToVisit.poll();
-        if (page != null) {
-            Bson updates = Updates.pull("urls", page.location());
-            UpdateOptions options = new UpdateOptions().upsert(false);
-            urlsCollection.updateOne(urlsToVisitFilter, updates, options);
-
-            pagesVisited.add(page.location());
-            updates = Updates.combine(Updates.push("urls", page.location()));
-            options = new UpdateOptions().upsert(true);
-            urlsCollection.updateOne(visitedUrlsFilter, updates, options);
+        try {
+            return processNext(crawlerToQueueUrlsTo, 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
 
-            HashMap<DataType, HashMap<String, Integer>> pageData = extractPageData(page);
-            if (!pageData.isEmpty()) {
-                // Get all internal urls and queue them into the crawler
-                if (pageData.containsKey(DataType.InternalUrl)) {
-                    pageData.get(DataType.InternalUrl).keySet().stream().filter(Objects::nonNull)
-                            .forEach(crawlerToQueueUrlsTo::queueUrl);
-                }
+    /**
+     * Process the next page, waiting up to the given time for one to be queued if there isn't one yet. Safe to call
+     * from multiple threads.
+     *
+     * @param crawlerToQueueUrlsTo the crawler that the internal urls found should be added to
+     * @param maxWaitMs            the maximum time to wait for a page to be queued
+     * @return the url of the page processed if it is processed successfully; otherwise null.
+     * @throws InterruptedException if interrupted while waiting for a page
+     */
+    public String processNext(Crawler crawlerToQueueUrlsTo, long maxWaitMs) throws InterruptedException {
+        PageHandle handle = pagesToVisit.poll(maxWaitMs, TimeUnit.MILLISECONDS);
+        if (handle == null) {
+            return null;
+        }
+        if (!handle.hasBody()) {
+            // Its body was lost, so the crawler downloads it again, politely and through its own fetcher. The page is
+            // left to be visited meanwhile, so a restart before it comes back makes it be asked for again.
+            urlsToRefetch.put(handle.getRequestedUrl(), handle.getUrl());
+            crawlerToQueueUrlsTo.requeueUrl(handle.getRequestedUrl());
+            numPagesPending.decrementAndGet();
+            return null;
+        }
+        try {
+            numQueuedPageBytes.addAndGet(-handle.getCompressedSize());
+            numPagesVisited.incrementAndGet();
+            return processPage(handle.getRequestedUrl(), handle.parse(), crawlerToQueueUrlsTo);
+        } catch (IOException e) {
+            System.out.println("Scraper error parsing page " + handle.getUrl() + " - page not scraped. "
+                    + e.getMessage());
+            crawlerToQueueUrlsTo.queueUrls(handle.getRequestedUrl(), List.of());
+            return null;
+        } finally {
+            // Mark the page visited even if it can't be parsed, as a later attempt would fail the same way. It's only
+            // marked once its urls are queued into the crawler, so that a restart can't lose them. Its body is no
+            // longer needed then; if the mark is lost to a restart, the page is asked for again.
+            urlStore.markVisited(handle.getUrl());
+            handle.release();
+            numPagesPending.decrementAndGet();
+        }
+    }
 
-                // Store results in the db, inserting or updating a document for each value found.
+    /**
+     * Extract all info from the page, store it in the db, and queue any newly found internalUrls into the crawler.
+     *
+     * @param pageUrl              the url the crawler asked for the page by, before any redirects
+     * @param page                 the page to process
+     * @param crawlerToQueueUrlsTo the crawler that the internal urls found should be added to
+     * @return the url of the page processed if it is processed successfully; otherwise null.
+     */
+    private String processPage(String pageUrl, Document page, Crawler crawlerToQueueUrlsTo) {
+        HashMap<DataType, HashMap<String, Integer>> pageData = page != null ? extractPageData(page) : new HashMap<>();
+        // Get all internal urls and queue them into the crawler, along with the page they were found on. The crawler is
+        // told of every page, even one without any, as it keeps each page's depth until then.
+        crawlerToQueueUrlsTo.queueUrls(pageUrl, pageData.getOrDefault(DataType.InternalUrl, new HashMap<>()).keySet());
+        if (page != null) {
+            // A page scraped before (in a recrawl, or again after a restart cut its scrape short) has the counts it was
+            // last scraped with, which are taken off the totals so that they only count the page as it is now
+            HashMap<DataType, HashMap<String, Integer>> previous = occurrenceStore != null
+                    ? occurrenceStore.find(page.location()) : new HashMap<>();
+            if (!pageData.isEmpty() || !previous.isEmpty()) {
+                // Store results in the db, inserting or updating a document for each value found. All the values are
+                // sent together in one unordered bulk write, and each count is added with $inc so that scraper
+                // threads (or processes) writing the same value at once don't overwrite each other's counts. The
+                // pages each value was found on are kept in the occurrences collection, not the value's document,
+                // so that a value's document stays the same size however many pages it's found on.
+                List<WriteModel<org.bson.Document>> writes = new ArrayList<>();
+                List<Bson> removed = new ArrayList<>();  // values no longer found on the page
+                UpdateOptions options = new UpdateOptions().upsert(true);
                 for (DataType type : pageData.keySet()) {
+                    HashMap<String, Integer> previousCounts = previous.getOrDefault(type, new HashMap<>());
                     for (String item : pageData.get(type).keySet()) {
+                        int count = pageData.get(type).get(item) - previousCounts.getOrDefault(item, 0);
+                        if (count != 0) {
+                            org.bson.Document filter = new org.bson.Document().append("type", type)
+                                    .append("value", item);
+                            writes.add(new UpdateOneModel<>(filter, Updates.inc("totalInstances", count), options));
+                        }
+                    }
+                }
+                previous.forEach((type, items) -> items.forEach((item, count) -> {
+                    if (!pageData.getOrDefault(type, new HashMap<>()).containsKey(item)) {
                         org.bson.Document filter = new org.bson.Document().append("type", type).append("value", item);
-                        Bson projection = Projections.fields(Projections.include("totalInstances"), Projections.excludeId());
-                        org.bson.Document doc = dataCollection.find(filter).projection(projection).first();
-                        int previousTotalInstances = doc != null ? (int) doc.get("totalInstances") : 0;
-                        org.bson.Document update = new org.bson.Document().append("url", page.location()).append("count", pageData.get(type).get(item));
-                        updates = Updates.combine(Updates.push("numInstancesByUrl", update), Updates.set("totalInstances", previousTotalInstances + pageData.get(type).get(item)));
-                        options = new UpdateOptions().upsert(true);
-                        dataCollection.updateOne(filter, updates, options);
+                        writes.add(new UpdateOneModel<>(filter, Updates.inc("totalInstances", -count)));
+                        removed.add(filter);
+                    }
+                }));
+                // Any other db error stops the page's remaining writes: if the values weren't stored, neither are
+                // the occurrences the next scrape of the page diffs against
+                try {
+                    if (!writes.isEmpty()) {
+                        long start = System.nanoTime();
+                        try {
+                            dataCollection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+                            if (writeSeconds != null) {
+                                writeSeconds.observeSince(start, dataCollection.getNamespace().getCollectionName());
+                            }
+                            numDataValuesWritten.addAndGet(writes.size());
+                        } catch (MongoBulkWriteException e) {
+                            // The write is unordered, so every value but those that failed was stored
+                            System.out.println("Scraper error storing " + e.getWriteErrors().size() + " of the "
+                                    + writes.size() + " values found on " + page.location() + ". " + e.getMessage());
+                            numDataValuesWritten.addAndGet(writes.size() - e.getWriteErrors().size());
+                        }
+                        numDataWriteRoundTrips.incrementAndGet();
+                    }
+                    // A value no longer found on any page is removed altogether
+                    if (!removed.isEmpty()) {
+                        dataCollection.deleteMany(Filters.and(Filters.or(removed), Filters.lte("totalInstances", 0)));
+                        numDataWriteRoundTrips.incrementAndGet();
+                    }
+                    if (occurrenceStore != null) {
+                        long start = System.nanoTime();
+                        occurrenceStore.record(page.location(), pageData, previous);
+                        if (writeSeconds != null) {
+                            writeSeconds.observeSince(start, occurrenceStore.getCollectionName());
+                        }
+                        numDataWriteRoundTrips.incrementAndGet();
                     }
+                } catch (MongoException e) {
+                    System.out.println("Scraper error storing the values found on " + page.location() + ". "
+                            + e.getMessage());
+                    return null;
                 }
+            }
+            if (!pageData.isEmpty()) {
                 return page.location();
             }
         }
@@ -172,208 +517,143 @@ public class Scraper {
     }
 
     /**
-     * Extract all data types from the page.
+     * Extract all data types from the page, recording the CPU time each extractor took if the metrics are recorded.
      *
      * @param page the page to extract from
      * @return a 2D HashMap mapping each DataType to a HashMap that maps the data item to the number of times it was
      * found on the page.
      */
     private HashMap<DataType, HashMap<String, Integer>> extractPageData(Document page) {
-        HashMap<DataType, HashMap<String, Integer>> pageData = new HashMap<>();
-        if (page != null) {
-            // Address:
-            // group 1 - house number,
-            // group 2 - street,
-            // group 3 - city,
-            // group 4 - state (code or name),
-            // group 5 - 5 digit zip code,
-            // group 6 - 4 digit zip code suffix, if applicable
-            // "(?i)(\\w+(?:-\\w+)?) ((?:\\d*[a-z]+\\.? )*[a-z]+\\.?)\\s((?:[a-z]+ )*[a-z]+), ([A-Z]{2}) (\\d{5})(?:-(\\d{4}))?";
-            String addressPattern = "(?i)(\\w+(?:-\\w+)?) ((?:\\d*[a-z]+\\.? )*[a-z]+\\.?)\\s((?:[a-z]+ )*[a-z]+), " +
-                    "([A-Z]{2}|[a-z]+(?: [a-z]+)) (\\d{5})(?:-(\\d{4}))?";
-            pageData.put(DataType.Address, extractItemsMatchingPattern(page, addressPattern));
-
-            // UsDate:
-            // group 1 - Month,
-            // group 2 - day,
-            // group 3 - year
-            String usDatePattern = "((?i)JAN(?:\\.|UARY)|FEB(?:\\.|RUARY)|MAR(?:\\.|CH)|APR(?:\\.|IL)|MAY|JUNE|JULY|" +
-                    "AUG(?:\\.|UST)|SEPT(?:\\.|EMBER)|OCT(?:\\.|OBER)|NOV(?:\\.|EMBER)|DEC(?:\\.|EMBER)|0?[1-9]|1[0-2])" +
-                    "(?:\\s|\\s?[/\\.]\\s?)(0?[1-9]|[1-2][1-9]|3[0-1])(?:\\s|\\s?[/\\.,]\\s?)(\\d{4})";
-            pageData.put(DataType.UsDate, extractItemsMatchingPattern(page, usDatePattern));
-
-
-            String courseCodePattern = "(?<!\\w)[A-Z]{4}\\s\\d{3}(?!\\w)";
-            pageData.put(DataType.CourseCode, extractItemsMatchingPattern(page, courseCodePattern));
-
-            // Extract all url data types and add it to the pageData HashMap.
-            mergeAndIncrementDuplicatesInMaps(pageData, extractAllUrlTypes(page));
+        if (extractCpuSeconds == null || page == null) {
+            return extractor.extractPageData(page);
         }
+        HashMap<String, Long> extractNanos = new HashMap<>();
+        long cpuStart = currentThreadCpuNanos();
+        HashMap<DataType, HashMap<String, Integer>> pageData = extractor.extractPageData(page, extractNanos);
+        long cpuEnd = currentThreadCpuNanos();
+        recordExtractCpu(cpuStart >= 0 && cpuEnd >= 0 ? cpuEnd - cpuStart : -1, extractNanos);
         return pageData;
     }
 
-
     /**
-     * Extract the different types of urls found on the page. Includes internal, external, phone number, email, and image urls.
+     * Record the CPU time the page's extraction took, split between the extractors by the (wall clock) time spent in
+     * each. The thread's CPU clock is only read at the start and end of the page, as reading it for every run of text
+     * would cost more than the matching; the split also spreads the work shared by the extractors (walking the page)
+     * over them.
      *
-     * @param page the page to extract the urls from
-     * @return a 2D HashMap mapping each DataType to a HashMap that maps the data to the number of times it was
-     * found on the page.
+     * @param cpuNanos     the CPU time the whole extraction took, or a negative number if it couldn't be measured
+     * @param extractNanos the time spent in each extractor
      */
-    private HashMap<DataType, HashMap<String, Integer>> extractAllUrlTypes(Document page) {
-        HashMap<DataType, HashMap<String, Integer>> pageData = new HashMap<>();
-
-        pageData.put(DataType.ImageUrl, extractImageUrls(page));
-
-        // Get all links contained in <a> elements as full (absolute) urls without their anchors (the part after #)
-        Elements links = page.select("a[href]");
-        HashMap<String, Integer> absoluteUrls = new HashMap<>();
-        links.forEach(url -> {
-            String absoluteUrl = url.absUrl("href");
-            String pageUrlWithoutAnchor = absoluteUrl.contains("#") ? absoluteUrl.substring(0, absoluteUrl.indexOf("#")) : absoluteUrl;
-            if (!absoluteUrls.containsKey(pageUrlWithoutAnchor)) {
-                absoluteUrls.put(pageUrlWithoutAnchor, 1);
-            } else {
-                absoluteUrls.put(pageUrlWithoutAnchor, absoluteUrls.get(pageUrlWithoutAnchor) + 1);
-            }
-        });
+    private void recordExtractCpu(long cpuNanos, Map<String, Long> extractNanos) {
+        long totalNanos = extractNanos.values().stream().mapToLong(Long::longValue).sum();
+        extractNanos.forEach((name, nanos) -> extractCpuSeconds.observe(cpuNanos >= 0 && totalNanos > 0
+                ? cpuNanos * ((double) nanos / totalNanos) / 1e9 : nanos / 1e9, name));
+    }
 
-        HashMap<String, Integer> internalUrls = new HashMap<>();
-        HashMap<String, Integer> externalUrls = new HashMap<>();
-        HashMap<String, Integer> emailUrls = new HashMap<>();
-        HashMap<String, Integer> phoneNumberUrls = new HashMap<>();
-        HashMap<String, Integer> unknownUrls = new HashMap<>();
-
-        Pattern internalUrl = Pattern.compile("https?://((\\w|\\d)+\\.)*" + domainRegex + ".*");
-        Pattern externalUrl = Pattern.compile("https?://(?!" + domainRegex + ")+(\\w|\\d)+\\.(?!" + domainRegex + ").*");
-        Pattern email = Pattern.compile("^(mailto:)(.*)");
-        Pattern phoneNumber = Pattern.compile("^(tel:)(.*)");
-
-        // Collect each link as the appropriate DataType
-        for (String url : absoluteUrls.keySet()) {
-            Matcher internalUrlMatcher = internalUrl.matcher(url);
-            Matcher externalUrlMatcher = externalUrl.matcher(url);
-            Matcher emailUrlMatcher = email.matcher(url);
-            Matcher phoneNumberUrlMatcher = phoneNumber.matcher(url);
-
-            int numOccurrencesOnPage = absoluteUrls.get(url);
-            if (internalUrlMatcher.matches()) {
-                internalUrls.put(url, numOccurrencesOnPage);
-            } else if (externalUrlMatcher.matches()) {
-                externalUrls.put(url, numOccurrencesOnPage);
-            } else if (emailUrlMatcher.matches()) {
-                emailUrls.put(url, numOccurrencesOnPage);
-            } else if (phoneNumberUrlMatcher.matches()) {
-                phoneNumberUrls.put(url, numOccurrencesOnPage);
-            } else {
-                unknownUrls.put(url, numOccurrencesOnPage);
-            }
-        }
+    /**
+     * @return the CPU time used by the current thread so far, in nanoseconds, or -1 if it can't be measured
+     */
+    private static long currentThreadCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
 
-        // Pack and return
-        pageData.put(DataType.InternalUrl, internalUrls);
-        pageData.put(DataType.ExternalUrl, externalUrls);
-        pageData.put(DataType.EmailAddress, emailUrls);
-        pageData.put(DataType.PhoneNumber, phoneNumberUrls);
-        pageData.put(DataType.UnknownUrls, unknownUrls);
-        return pageData;
+    /**
+     * Indicate if the scraper currently has at least one more page left to visit, or is still processing one.
+     *
+     * @return <code>true</code> if the scraper currently has at least one more page left to visit or is processing
+     * one; otherwise <code>false</code>.
+     */
+    public boolean hasNext() {
+        return numPagesPending.get() > 0;
     }
 
     /**
-     * Extract the image urls found on the page.
+     * Get the number of urls left to visit
      *
-     * @param page the page to extract from
-     * @return a HashMap mapping each image url found to the number of times it was found
+     * @return the number of urls left to visit
      */
-    private HashMap<String, Integer> extractImageUrls(Document page) {
-        Elements images = page.select("img[src]");
-        HashMap<String, Integer> imageLinks = new HashMap<>();
-        images.forEach(link -> {
-            String absoluteLink = link.absUrl("src");
-            if (!imageLinks.containsKey(absoluteLink)) {
-                imageLinks.put(absoluteLink, 1);
-            } else {
-                imageLinks.put(absoluteLink, imageLinks.get(absoluteLink) + 1);
-            }
-        });
-        return imageLinks;
+    public int getNumUrlsLeftToVisit() {
+        return pagesToVisit.size();
     }
 
     /**
-     * Extract all items on the page that match the given regex pattern.
+     * Get the number of urls visited. A page queued again because it changed is counted again once it's scraped.
      *
-     * @param doc     the page to extract from
-     * @param pattern the pattern to extract matching text
-     * @return a HashMap mapping each value found to the number of times it was found on the page.
+     * @return the number of urls visited
      */
-    private HashMap<String, Integer> extractItemsMatchingPattern(Document doc, String pattern) {
-        HashMap<String, Integer> data = new HashMap<>();
-        Pattern itemPattern = Pattern.compile(pattern);
-
-        // For each match found, add it to the HashMap, incrementing the int value if it was already there.
-        doc.select("*:matchesOwn(" + pattern + ")").forEach(x -> {
-            Matcher matcher = itemPattern.matcher(x.text());
-            // matcher.find() must be called before calling .group() so that .group() gets results.
-            if (matcher.find()) {
-                String thisMatch = matcher.group();
-                data.put(thisMatch, data.containsKey(thisMatch) ? data.get(thisMatch) + 1 : 1);
-            }
-        });
-        return data;
+    public int getNumUrlsVisited() {
+        return numPagesVisited.get();
     }
 
     /**
-     * Merge 2 - 2D HashMaps into one, joining the inner maps by incrementing their (integer) values for
-     * each new duplicate caused by the merge. The inner map is some Data type mapped to an integer that counts the
-     * number of times the key occurred.
+     * Save the page urls encountered so far to the snapshot file, to be loaded from the next time instead of the db.
+     * Does nothing if the scraper wasn't given a snapshot file. Safe to call while scraping.
      *
-     * @param originalMap the original map to merge into
-     * @param mapToAdd    the map to add the items from
+     * @return <code>true</code> if the snapshot was saved; otherwise <code>false</code>.
      */
-    private <T, U> void mergeAndIncrementDuplicatesInMaps(HashMap<T, HashMap<U, Integer>> originalMap, HashMap<T, HashMap<U, Integer>> mapToAdd) {
-        mapToAdd.forEach((k, v) -> originalMap.merge(k, v, (originalValues, mapToAddValues) -> {
-            HashMap<U, Integer> originalCopy = new HashMap<>(originalValues);
-            HashMap<U, Integer> mapToAddCopy = new HashMap<>(mapToAddValues);
-            mergeAndIncrementDuplicates(originalCopy, mapToAddCopy);
-            return originalCopy;
-        }));
+    public boolean saveSnapshot() {
+        if (snapshotFile == null) {
+            return false;
+        }
+        long startedAt = System.currentTimeMillis();
+        FingerprintSet fingerprints;
+        synchronized (allEncounteredPageUrls) {
+            fingerprints = allEncounteredPageUrls.copy();
+        }
+        return FrontierSnapshot.save(snapshotFile, startedAt, fingerprints, urlStore, CONTENT_HASH, CHARSET,
+                REQUESTED_URL);
     }
 
     /**
-     * Merge 2 maps, incrementing the Integer value for each new duplicate caused by the merge.
+     * Get the number of values stored in the db so far. Each one used to take two requests to the db (reading its
+     * previous total, then writing the new one).
      *
-     * @param original the original map to merge into
-     * @param add      the map to add the items from
+     * @return the number of values stored
      */
-    private <U> void mergeAndIncrementDuplicates(HashMap<U, Integer> original, HashMap<U, Integer> add) {
-        add.forEach((k, v) -> original.merge(k, v, Integer::sum));
+    public long getNumDataValuesWritten() {
+        return numDataValuesWritten.get();
     }
 
     /**
-     * Indicate if the scraper currently has at least one more page left to visit.
+     * Get the number of requests made to the db to store the values found, one per page scraped
      *
-     * @return <code>true</code> if the scraper currently has at least one more page left to visit; otherwise <code>false</code>.
+     * @return the number of requests made to store values
      */
-    public boolean hasNext() {
-        return !pagesToVisit.isEmpty();
+    public long getNumDataWriteRoundTrips() {
+        return numDataWriteRoundTrips.get();
     }
 
     /**
-     * Get the number of urls left to visit
+     * Get the memory taken up by the pages waiting to be scraped
      *
-     * @return the number of urls left to visit
+     * @return the total size of the queued pages' compressed bodies in bytes
      */
-    public int getNumUrlsLeftToVisit() {
-        return pagesToVisit.size();
+    public long getQueuedPageBytes() {
+        return numQueuedPageBytes.get();
     }
 
     /**
-     * Get the number of urls visited
+     * Get the memory taken up by the fingerprints of all page urls encountered
      *
-     * @return the number of urls visited
+     * @return the size of the set of encountered page urls in bytes
      */
-    public int getNumUrlsVisited() {
-        return pagesVisited.size();
+    public long getEncounteredUrlsMemoryBytes() {
+        synchronized (allEncounteredPageUrls) {
+            return allEncounteredPageUrls.getMemoryBytes();
+        }
+    }
+
+    /**
+     * Get the expected number of pages that were not queued because their url's fingerprint collided with that of
+     * another page
+     *
+     * @return the expected number of pages wrongly dropped
+     */
+    public double getExpectedFalseDrops() {
+        synchronized (allEncounteredPageUrls) {
+            return allEncounteredPageUrls.getExpectedFalseDrops();
+        }
     }
 }
 
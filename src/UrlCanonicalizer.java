@@ -0,0 +1,274 @@
+// 10.15.2026
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites urls into one canonical form before they're checked against the urls already encountered, so that the
+ * different ways of writing the same page's url aren't each downloaded. Each {@link Rule} can be turned on or off, and
+ * the number of urls each one changed is counted.
+ * <p>
+ * The site's own url decides which way the scheme and the <code>www.</code> go: urls of the site's host, with or
+ * without <code>www.</code>, are given the site's form, and <code>http</code> urls of it are moved to
+ * <code>https</code> if the site is served over it. Other hosts keep their scheme and host.
+ * <p>
+ * Urls are split into their parts by hand rather than by <code>java.net.URI</code>, which rejects many urls found in
+ * the wild (with spaces or unescaped characters, for instance); an url without a scheme and host is left as it is.
+ * <p>
+ * The canonical url is the one downloaded, so a trailing slash is always kept: <code>/dir/</code> and
+ * <code>/dir</code> are left as they are, as most servers redirect one to the other (which would cost a request), and
+ * relative links on a page are resolved against its url up to the last slash. Thread-safe.
+ */
+public class UrlCanonicalizer {
+
+    /**
+     * The rewrites the canonicalizer can make, in the order they're made
+     */
+    public enum Rule {
+        FRAGMENT("fragment"),  // drop the #fragment
+        CASE("case"),  // lower-case the scheme and host, and give an empty path as "/"
+        DEFAULT_PORT("default port"),  // drop :80 from http and :443 from https urls
+        HTTPS("https"),  // move http urls of the site to https, if the site is served over it
+        WWW("www"),  // give urls of the site's host with or without "www." the site's form
+        PERCENT_ENCODING("percent-encoding"),  // upper-case percent-escapes, and decode those of unreserved characters
+        DOT_SEGMENTS("dot segments"),  // resolve "." and ".." path segments
+        INDEX_PAGE("index page"),  // drop a trailing index.html (and the like) from the path, keeping the slash
+        TRACKING_PARAMETERS("tracking parameters");  // drop utm_* and other click-tracking query parameters
+
+        final String label;  // as shown in the status and metrics
+
+        Rule(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Pattern INDEX_PAGE = Pattern.compile("(?i)(index|default)\\.(html?|php|aspx?|jsp|cgi)");
+    private static final Set<String> TRACKING_PARAMETERS = Set.of("gclid", "gclsrc", "dclid", "fbclid", "msclkid",
+            "yclid", "mc_cid", "mc_eid", "_ga", "_gl", "_hsenc", "_hsmi", "igshid");
+    private static final String UNRESERVED = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~";
+
+    private final Set<Rule> rules;
+    private final boolean siteIsHttps;
+    private final String siteHost;  // lower case, as in the site's url
+    private final String siteBareHost;  // the site's host without "www."
+    private final EnumMap<Rule, LongAdder> hits = new EnumMap<>(Rule.class);
+    private final Metrics.Counter hitsCounter;  // null if there are no metrics to record
+
+    /**
+     * @param siteUrl the url of the site being crawled, whose scheme and host are the canonical ones
+     */
+    public UrlCanonicalizer(String siteUrl) {
+        this(siteUrl, EnumSet.allOf(Rule.class), null);
+    }
+
+    /**
+     * @param siteUrl the url of the site being crawled, whose scheme and host are the canonical ones
+     * @param rules   the rules to apply
+     * @param metrics the metrics to count each rule's rewrites in, or null to not record them
+     */
+    public UrlCanonicalizer(String siteUrl, Set<Rule> rules, Metrics metrics) {
+        this.rules = rules.isEmpty() ? EnumSet.noneOf(Rule.class) : EnumSet.copyOf(rules);
+        this.siteIsHttps = siteUrl.regionMatches(true, 0, "https://", 0, "https://".length());
+        this.siteHost = HostScheduler.hostOf(siteUrl);
+        this.siteBareHost = siteHost.startsWith("www.") ? siteHost.substring("www.".length()) : siteHost;
+        for (Rule rule : Rule.values()) {
+            hits.put(rule, new LongAdder());
+        }
+        this.hitsCounter = metrics != null ? metrics.counter("crawler_canonicalized_urls_total",
+                "Urls rewritten by each canonicalization rule before being checked for duplicates.", "rule") : null;
+    }
+
+    /**
+     * Rewrite an url into its canonical form.
+     *
+     * @param url the url
+     * @return the canonical url, which is the url itself if no rule changed it
+     */
+    public String canonicalize(String url) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd <= 0) {
+            return url;
+        }
+        String fragment = null;
+        int hash = url.indexOf('#');
+        String rest = url;
+        if (hash >= 0) {
+            fragment = rest.substring(hash);
+            rest = rest.substring(0, hash);
+        }
+        String query = null;
+        int question = rest.indexOf('?', schemeEnd + 3);
+        if (question >= 0) {
+            query = rest.substring(question + 1);
+            rest = rest.substring(0, question);
+        }
+        String scheme = rest.substring(0, schemeEnd);
+        int pathStart = rest.indexOf('/', schemeEnd + 3);
+        String authority = pathStart >= 0 ? rest.substring(schemeEnd + 3, pathStart) : rest.substring(schemeEnd + 3);
+        String path = pathStart >= 0 ? rest.substring(pathStart) : "";
+        int at = authority.lastIndexOf('@');
+        String userInfo = at >= 0 ? authority.substring(0, at + 1) : "";
+        String hostPort = authority.substring(at + 1);
+        int colon = hostPort.lastIndexOf(':');
+        // A colon inside brackets belongs to an IPv6 address, not a port
+        if (colon >= 0 && hostPort.indexOf(']') > colon) {
+            colon = -1;
+        }
+        String host = colon >= 0 ? hostPort.substring(0, colon) : hostPort;
+        String port = colon >= 0 ? hostPort.substring(colon) : "";
+        if (host.isEmpty()) {
+            return url;
+        }
+
+        if (fragment != null && apply(Rule.FRAGMENT)) {
+            fragment = null;
+        }
+        if (rules.contains(Rule.CASE)) {
+            String lowerScheme = scheme.toLowerCase(Locale.ROOT);
+            String lowerHost = host.toLowerCase(Locale.ROOT);
+            if ((!lowerScheme.equals(scheme) || !lowerHost.equals(host) || path.isEmpty()) && apply(Rule.CASE)) {
+                scheme = lowerScheme;
+                host = lowerHost;
+                path = path.isEmpty() ? "/" : path;
+            }
+        }
+        if ((port.equals(":") || scheme.equalsIgnoreCase("http") && port.equals(":80")
+                || scheme.equalsIgnoreCase("https") && port.equals(":443")) && apply(Rule.DEFAULT_PORT)) {
+            port = "";
+        }
+        boolean isSiteHost = host.equalsIgnoreCase(siteBareHost) || host.equalsIgnoreCase("www." + siteBareHost);
+        if (isSiteHost && siteIsHttps && scheme.equalsIgnoreCase("http") && port.isEmpty() && apply(Rule.HTTPS)) {
+            scheme = "https";
+        }
+        if (isSiteHost && !host.equalsIgnoreCase(siteHost) && apply(Rule.WWW)) {
+            host = siteHost;
+        }
+        if (rules.contains(Rule.PERCENT_ENCODING)) {
+            String normalPath = normalizePercentEncoding(path);
+            String normalQuery = query != null ? normalizePercentEncoding(query) : null;
+            if ((!normalPath.equals(path) || !Objects.equals(normalQuery, query)) && apply(Rule.PERCENT_ENCODING)) {
+                path = normalPath;
+                query = normalQuery;
+            }
+        }
+        if (rules.contains(Rule.DOT_SEGMENTS) && path.contains(".")) {
+            String resolved = removeDotSegments(path);
+            if (!resolved.equals(path) && apply(Rule.DOT_SEGMENTS)) {
+                path = resolved;
+            }
+        }
+        if (rules.contains(Rule.INDEX_PAGE)) {
+            int lastSlash = path.lastIndexOf('/');
+            if (lastSlash >= 0 && INDEX_PAGE.matcher(path.substring(lastSlash + 1)).matches()
+                    && apply(Rule.INDEX_PAGE)) {
+                path = path.substring(0, lastSlash + 1);
+            }
+        }
+        if (query != null && rules.contains(Rule.TRACKING_PARAMETERS)) {
+            String kept = removeTrackingParameters(query);
+            if (!kept.equals(query) && apply(Rule.TRACKING_PARAMETERS)) {
+                query = kept.isEmpty() ? null : kept;
+            }
+        }
+
+        return scheme + "://" + userInfo + host + port + path + (query != null ? "?" + query : "")
+                + (fragment != null ? fragment : "");
+    }
+
+    /**
+     * Get the number of urls each rule changed so far
+     *
+     * @return the number of urls changed, by rule, for every rule (including those turned off)
+     */
+    public Map<Rule, Long> getHits() {
+        EnumMap<Rule, Long> counts = new EnumMap<>(Rule.class);
+        hits.forEach((rule, count) -> counts.put(rule, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Count a rule as changing an url, if it's turned on.
+     *
+     * @return <code>true</code> if the rule is turned on (so the change should be made); otherwise <code>false</code>.
+     */
+    private boolean apply(Rule rule) {
+        if (!rules.contains(rule)) {
+            return false;
+        }
+        hits.get(rule).increment();
+        if (hitsCounter != null) {
+            hitsCounter.inc(rule.label);
+        }
+        return true;
+    }
+
+    /**
+     * Upper-case the hex digits of every percent-escape, and decode the escapes of unreserved characters, which mean
+     * the same escaped or not (RFC 3986, section 6.2.2.2).
+     */
+    private static String normalizePercentEncoding(String s) {
+        if (s.indexOf('%') < 0) {
+            return s;
+        }
+        StringBuilder out = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '%' && i + 2 < s.length() && isHex(s.charAt(i + 1)) && isHex(s.charAt(i + 2))) {
+                char decoded = (char) Integer.parseInt(s.substring(i + 1, i + 3), 16);
+                if (UNRESERVED.indexOf(decoded) >= 0) {
+                    out.append(decoded);
+                } else {
+                    out.append('%').append(Character.toUpperCase(s.charAt(i + 1)))
+                            .append(Character.toUpperCase(s.charAt(i + 2)));
+                }
+                i += 2;
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isHex(char c) {
+        return Character.digit(c, 16) >= 0;
+    }
+
+    /**
+     * Resolve the "." and ".." segments of a path (RFC 3986, section 5.2.4). A ".." above the root is dropped.
+     */
+    private static String removeDotSegments(String path) {
+        String[] segments = path.split("/", -1);
+        ArrayDeque<String> kept = new ArrayDeque<>();
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            boolean last = i == segments.length - 1;
+            if (segment.equals(".") || segment.equals("..")) {
+                if (segment.equals("..") && !kept.isEmpty()) {
+                    kept.removeLast();
+                }
+                if (last) {
+                    kept.addLast("");  // "/a/b/.." is the directory "/a/"
+                }
+            } else {
+                kept.addLast(segment);
+            }
+        }
+        return "/" + String.join("/", kept);
+    }
+
+    /**
+     * Drop the query parameters used only to track where a click came from.
+     */
+    private static String removeTrackingParameters(String query) {
+        StringJoiner kept = new StringJoiner("&");
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = (equals >= 0 ? parameter.substring(0, equals) : parameter).toLowerCase(Locale.ROOT);
+            if (!name.startsWith("utm_") && !TRACKING_PARAMETERS.contains(name) && !parameter.isEmpty()) {
+                kept.add(parameter);
+            }
+        }
+        return kept.toString();
+    }
+}
@@ -0,0 +1,133 @@
+// 10.15.2026
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Computes 64-bit fingerprints of urls, used to tell whether an url was already encountered without keeping the url
+ * itself. The fingerprint is the first half of the 128-bit MurmurHash3 (x64 variant) of the url's UTF-8 bytes, which
+ * spreads urls evenly over all 2^64 values: among <i>n</i> distinct urls the chance of any two sharing a fingerprint is
+ * about <i>n</i>^2 / 2^65, e.g. roughly 1 in 37 million for a million urls. (A 32-bit <code>String.hashCode()</code> is
+ * expected to produce a collision after about 77,000 urls.)
+ */
+public final class UrlFingerprint {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final int SEED = 0;
+
+    private UrlFingerprint() {
+    }
+
+    /**
+     * Get the 64-bit fingerprint of an url
+     *
+     * @param url the url
+     * @return the url's fingerprint
+     */
+    public static long of(String url) {
+        return murmur3x64(url.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the expected number of urls wrongly taken to have already been encountered over the course of adding the
+     * given number of distinct urls.
+     *
+     * @param numFingerprints the number of distinct urls added
+     * @return the expected number of urls dropped because of a collision
+     */
+    public static double expectedFalseDrops(long numFingerprints) {
+        return (double) numFingerprints * (numFingerprints - 1) / 0x1p65;
+    }
+
+    /**
+     * The first 64 bits of MurmurHash3_x64_128.
+     */
+    @SuppressWarnings("fallthrough")  // the tail bytes are mixed in by falling through from the longest tail down
+    private static long murmur3x64(byte[] data) {
+        int length = data.length;
+        int numBlocks = length / 16;
+        long h1 = SEED;
+        long h2 = SEED;
+
+        for (int i = 0; i < numBlocks; i++) {
+            long k1 = getLittleEndianLong(data, i * 16);
+            long k2 = getLittleEndianLong(data, i * 16 + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // The last (up to 15) bytes
+        long k1 = 0;
+        long k2 = 0;
+        int tail = numBlocks * 16;
+        switch (length & 15) {
+            case 15: k2 ^= (long) (data[tail + 14] & 0xff) << 48;
+            case 14: k2 ^= (long) (data[tail + 13] & 0xff) << 40;
+            case 13: k2 ^= (long) (data[tail + 12] & 0xff) << 32;
+            case 12: k2 ^= (long) (data[tail + 11] & 0xff) << 24;
+            case 11: k2 ^= (long) (data[tail + 10] & 0xff) << 16;
+            case 10: k2 ^= (long) (data[tail + 9] & 0xff) << 8;
+            case 9: k2 ^= data[tail + 8] & 0xff;
+                h2 ^= mixK2(k2);
+            case 8: k1 ^= (long) (data[tail + 7] & 0xff) << 56;
+            case 7: k1 ^= (long) (data[tail + 6] & 0xff) << 48;
+            case 6: k1 ^= (long) (data[tail + 5] & 0xff) << 40;
+            case 5: k1 ^= (long) (data[tail + 4] & 0xff) << 32;
+            case 4: k1 ^= (long) (data[tail + 3] & 0xff) << 24;
+            case 3: k1 ^= (long) (data[tail + 2] & 0xff) << 16;
+            case 2: k1 ^= (long) (data[tail + 1] & 0xff) << 8;
+            case 1: k1 ^= data[tail] & 0xff;
+                h1 ^= mixK1(k1);
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        return h1;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLittleEndianLong(byte[] data, int offset) {
+        return (data[offset] & 0xffL)
+                | (data[offset + 1] & 0xffL) << 8
+                | (data[offset + 2] & 0xffL) << 16
+                | (data[offset + 3] & 0xffL) << 24
+                | (data[offset + 4] & 0xffL) << 32
+                | (data[offset + 5] & 0xffL) << 40
+                | (data[offset + 6] & 0xffL) << 48
+                | (data[offset + 7] & 0xffL) << 56;
+    }
+}
@@ -0,0 +1,269 @@
+// 10.15.2026
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import org.bson.conversions.Bson;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the crawler's frontier, the urls waiting to be downloaded in a {@link UrlStore}, between the nodes of a
+ * distributed crawl. Instead of loading the whole frontier, each node claims urls a batch at a time by leasing them,
+ * in three round trips however large the batch: a batch of candidate urls that no live lease is held on is found, they
+ * are all leased by one <code>updateMany</code> that matches each of them only if it's still not leased, stamping it
+ * with the node's id, when the lease expires and a token unique to the claim, and the urls carrying the token are read
+ * back:
+ * <pre>
+ * { _id: "https://www.touro.edu/", state: "toVisit", partition: 417, leaseOwner: "node-1",
+ *   leaseExpiresAt: 1791000300000, leaseToken: "5f0c..." }
+ * </pre>
+ * Each url's update is atomic, so an url another node leased in between is left out rather than handed to two nodes
+ * at once. A node renews the leases it holds while it runs, so they only expire once
+ * the node is gone; the urls are then claimed again by whichever node now owns them.
+ * <p>
+ * To keep each host's politeness delay across nodes, every url of a host is downloaded by the same node. Hosts are
+ * hashed into a fixed number of partitions, kept with each url, and the partitions are shared out between the live
+ * nodes by the {@link NodeRegistry}'s consistent hashing; a node only claims urls of its own partitions. (The partition
+ * rather than the host is placed on the ring so that claims can match a short list of numbers by an index.) When a
+ * node joins or leaves, its neighbours' partitions change hands, but the urls already leased stay with the node that
+ * leased them, so for at most a lease two nodes may download from the same host.
+ * <p>
+ * Urls are only ever added to the frontier through the {@link UrlStore}, with {@link #fieldsFor} to set their
+ * partition; urls of earlier runs that have none are given theirs when the leases are created. Thread-safe.
+ */
+public class UrlLeases implements AutoCloseable {
+    public static final int NUM_PARTITIONS = 1024;  // kept with every url, so it can't be changed without redoing them
+    public static final long DEFAULT_LEASE_MS = 5 * 60 * 1000;
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    static final String PARTITION = "partition";
+    static final String LEASE_OWNER = "leaseOwner";
+    static final String LEASE_EXPIRES_AT = "leaseExpiresAt";
+    static final String LEASE_TOKEN = "leaseToken";  // which claim the lease was taken by
+    private static final int BACKFILL_BATCH_SIZE = 1000;
+    // How long to wait before checking the db again after a claim came up short or the frontier was found empty
+    private static final long EMPTY_RECHECK_MS = 1000;
+
+    private final MongoCollection<org.bson.Document> collection;
+    private final NodeRegistry nodes;
+    private final long leaseMs;
+    private final int batchSize;
+    private final ScheduledExecutorService renewer;
+    private long nextClaimAt = 0;
+    private long frontierCheckedAt = 0;
+    private boolean frontierEmpty = false;
+
+    /**
+     * Index the urls for claiming and give a partition to any url waiting to be visited that doesn't have one.
+     *
+     * @param collection the MongoDB collection of the crawler's urls, shared by all the nodes
+     * @param nodes      the registry of the nodes, which tells which partitions are this node's
+     */
+    public UrlLeases(MongoCollection<org.bson.Document> collection, NodeRegistry nodes) {
+        this(collection, nodes, DEFAULT_LEASE_MS, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Index the urls for claiming and give a partition to any url waiting to be visited that doesn't have one.
+     *
+     * @param collection the MongoDB collection of the crawler's urls, shared by all the nodes
+     * @param nodes      the registry of the nodes, which tells which partitions are this node's
+     * @param leaseMs    how long a lease lasts if it isn't renewed; it's renewed every third of that
+     * @param batchSize  the number of urls claimed at a time
+     */
+    public UrlLeases(MongoCollection<org.bson.Document> collection, NodeRegistry nodes, long leaseMs, int batchSize) {
+        this.collection = collection;
+        this.nodes = nodes;
+        this.leaseMs = leaseMs;
+        this.batchSize = batchSize;
+        collection.createIndex(Indexes.ascending(UrlStore.STATE, PARTITION, LEASE_EXPIRES_AT));
+        collection.createIndex(Indexes.ascending(LEASE_OWNER));
+        backfillPartitions();
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lease-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewer.scheduleWithFixedDelay(this::renew, leaseMs / 3, leaseMs / 3, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the partition an url's host is in.
+     *
+     * @param url the url
+     * @return the url's partition, from 0 to <code>NUM_PARTITIONS - 1</code>
+     */
+    public static int partitionOf(String url) {
+        return (int) Long.remainderUnsigned(UrlFingerprint.of(HostScheduler.hostOf(url)), NUM_PARTITIONS);
+    }
+
+    /**
+     * Get the fields to store with an url added to the frontier, so that it can be claimed.
+     *
+     * @param url the url
+     * @return the fields of the url's document
+     */
+    public static org.bson.Document fieldsFor(String url) {
+        return new org.bson.Document(PARTITION, partitionOf(url));
+    }
+
+    /**
+     * Get the number of urls claimed at a time
+     *
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Claim up to a number of urls of this node's partitions that no live lease is held on. After a claim that found
+     * fewer urls than wanted, or failed, the db isn't asked again for a second, so an empty frontier isn't polled in a
+     * tight loop.
+     *
+     * @param max    the maximum number of urls wanted
+     * @param fields the fields of each url's document to read along with it
+     * @return the documents of the urls claimed, with only their <code>_id</code> and the fields asked for; none if
+     * there are none to claim (or the db can't be reached)
+     */
+    public synchronized List<org.bson.Document> claim(int max, String... fields) {
+        List<org.bson.Document> claimed = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        if (max <= 0 || now < nextClaimAt) {
+            return claimed;
+        }
+        List<Integer> partitions = new ArrayList<>();
+        for (int partition = 0; partition < NUM_PARTITIONS; partition++) {
+            if (nodes.owns(String.valueOf(partition))) {
+                partitions.add(partition);
+            }
+        }
+        Bson unleased = Filters.and(Filters.eq(UrlStore.STATE, UrlStore.State.ToVisit.value),
+                Filters.in(PARTITION, partitions),
+                Filters.or(Filters.exists(LEASE_EXPIRES_AT, false), Filters.lte(LEASE_EXPIRES_AT, now)));
+        String token = UUID.randomUUID().toString();
+        Bson lease = Updates.combine(Updates.set(LEASE_OWNER, nodes.getNodeId()),
+                Updates.set(LEASE_EXPIRES_AT, now + leaseMs), Updates.set(LEASE_TOKEN, token));
+        List<String> candidates = new ArrayList<>();
+        try {
+            if (!partitions.isEmpty()) {
+                collection.find(unleased).projection(Projections.include("_id")).limit(max)
+                        .forEach(doc -> candidates.add(doc.getString("_id")));
+            }
+            if (!candidates.isEmpty()) {
+                // The candidates are matched again as unleased, so those another node leased since are skipped
+                Bson ids = Filters.in("_id", candidates);
+                collection.updateMany(Filters.and(ids, unleased), lease);
+                collection.find(Filters.and(ids, Filters.eq(LEASE_TOKEN, token)))
+                        .projection(Projections.fields(Projections.include("_id"), Projections.include(fields)))
+                        .into(claimed);
+            }
+            // Candidates leased by another node in between don't count, as there may be more urls to claim
+            if (candidates.size() < max) {
+                nextClaimAt = now + EMPTY_RECHECK_MS;
+            }
+        } catch (MongoException e) {
+            System.out.println("Error claiming urls - will retry. " + e.getMessage());
+            claimed.clear();
+            giveBack(candidates, token);
+            nextClaimAt = now + EMPTY_RECHECK_MS;
+        }
+        return claimed;
+    }
+
+    /**
+     * Indicate if any url, of any node, is still waiting to be visited. Checked against the db at most once a second.
+     *
+     * @param store the store this node adds urls through, whose pending changes are written before checking so that
+     *              the urls it just found are counted
+     * @return <code>true</code> if an url is waiting to be visited; otherwise <code>false</code>.
+     */
+    public synchronized boolean hasUrlsToVisit(UrlStore store) {
+        long now = System.currentTimeMillis();
+        if (now - frontierCheckedAt >= EMPTY_RECHECK_MS) {
+            try {
+                store.flushWrites();
+                frontierEmpty = collection.find(Filters.eq(UrlStore.STATE, UrlStore.State.ToVisit.value))
+                        .projection(Projections.include("_id")).first() == null;
+                frontierCheckedAt = now;
+            } catch (MongoException e) {
+                System.out.println("Error checking for urls to visit - will retry. " + e.getMessage());
+            }
+        }
+        return !frontierEmpty;
+    }
+
+    /**
+     * Stop renewing the leases and give up the ones still held, so that other nodes can claim their urls straight away.
+     */
+    @Override
+    public void close() {
+        renewer.shutdown();
+        try {
+            renewer.awaitTermination(1, TimeUnit.MINUTES);
+            collection.updateMany(Filters.and(Filters.eq(LEASE_OWNER, nodes.getNodeId()),
+                            Filters.eq(UrlStore.STATE, UrlStore.State.ToVisit.value)),
+                    Updates.combine(Updates.unset(LEASE_OWNER), Updates.unset(LEASE_EXPIRES_AT),
+                            Updates.unset(LEASE_TOKEN)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (MongoException e) {
+            System.out.println("Error giving up the leases held - they will expire instead. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Give up the leases taken by a claim that failed partway, as they'd otherwise be renewed without their urls ever
+     * being downloaded.
+     */
+    private void giveBack(List<String> urls, String token) {
+        if (urls.isEmpty()) {
+            return;
+        }
+        try {
+            collection.updateMany(Filters.and(Filters.in("_id", urls), Filters.eq(LEASE_TOKEN, token)),
+                    Updates.combine(Updates.unset(LEASE_OWNER), Updates.unset(LEASE_EXPIRES_AT),
+                            Updates.unset(LEASE_TOKEN)));
+        } catch (MongoException e) {
+            System.out.println("Error giving up the leases of a failed claim - they will be kept. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Extend every lease this node holds on an url still waiting to be visited.
+     */
+    private void renew() {
+        try {
+            collection.updateMany(Filters.and(Filters.eq(LEASE_OWNER, nodes.getNodeId()),
+                            Filters.eq(UrlStore.STATE, UrlStore.State.ToVisit.value)),
+                    Updates.set(LEASE_EXPIRES_AT, System.currentTimeMillis() + leaseMs));
+        } catch (MongoException e) {
+            System.out.println("Error renewing the leases held - will retry. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Give every url waiting to be visited that has no partition (as those of runs before the crawl was distributed)
+     * its partition, in unordered bulk writes.
+     */
+    private void backfillPartitions() {
+        List<WriteModel<org.bson.Document>> batch = new ArrayList<>();
+        Bson unpartitioned = Filters.and(Filters.eq(UrlStore.STATE, UrlStore.State.ToVisit.value),
+                Filters.exists(PARTITION, false));
+        for (org.bson.Document doc : collection.find(unpartitioned).projection(Projections.include("_id"))) {
+            String url = doc.getString("_id");
+            batch.add(new UpdateOneModel<>(Filters.eq("_id", url), Updates.set(PARTITION, partitionOf(url))));
+            if (batch.size() == BACKFILL_BATCH_SIZE) {
+                collection.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            collection.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+// 10.15.2026
+
+/**
+ * Decides how soon an url is downloaded, by giving it a priority in the crawler's frontier (see {@link HostScheduler}).
+ * An url is scored when it's first found, and again each time another page is found linking to it while it's still
+ * waiting; it's only ever raised by a new score, not lowered. Urls of the same priority are downloaded oldest first.
+ * <p>
+ * Implementations are thread-safe, as urls are scored on the scraper's threads.
+ */
+public interface UrlScorer {
+    int MIN_PRIORITY = 0;
+    int MAX_PRIORITY = HostScheduler.NUM_PRIORITIES - 1;
+
+    /**
+     * Score an url.
+     *
+     * @param url     the url
+     * @param depth   the number of links followed from the url the crawl started from to reach the url
+     * @param inLinks the number of pages found linking to the url so far
+     * @return the url's priority, from <code>MIN_PRIORITY</code> to <code>MAX_PRIORITY</code> (higher goes first)
+     */
+    int score(String url, int depth, int inLinks);
+}
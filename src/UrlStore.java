@@ -0,0 +1,299 @@
+// 10.15.2026
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import org.bson.conversions.Bson;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Persists a set of urls along with whether each one is still to be visited or was already visited. Each url is kept in
+ * its own document, keyed by the url itself, so marking an url costs a single indexed update no matter how many urls
+ * the collection holds:
+ * <pre>
+ * { _id: "https://www.touro.edu/", state: "toVisit", updatedAt: 1791000000000 }
+ * </pre>
+ * Every write also stamps the document with the time it was written (<code>updatedAt</code>, in milliseconds), so the
+ * urls changed since a given time can be read by themselves, as when a {@link FrontierSnapshot} is brought up to date.
+ * Earlier versions kept all the urls in one growing <code>urls</code> array per state (<code>{type: "toVisit", urls:
+ * [...]}</code>); those documents are migrated when the store is created.
+ * <p>
+ * Given a {@link WriteBehindBuffer}, changes are held there and written in bulk instead of one at a time. Reads write
+ * out the pending changes they depend on first.
+ */
+public class UrlStore {
+
+    /**
+     * The state an url can be in
+     */
+    public enum State {
+        ToVisit("toVisit"), Visited("visited");
+
+        final String value;  // as stored in the db
+
+        State(String value) {
+            this.value = value;
+        }
+    }
+
+    static final String STATE = "state";
+    static final String UPDATED_AT = "updatedAt";
+    private static final String LEGACY_TYPE = "type";
+    private static final String LEGACY_URLS = "urls";
+    private static final String LEGACY_TYPE_INDEX = "type_1";
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+
+    private final MongoCollection<org.bson.Document> collection;
+    private final WriteBehindBuffer writeBuffer;  // null to write each change straight away
+
+    /**
+     * Create the store's indexes and migrate any urls still kept in the old array documents.
+     *
+     * @param collection the MongoDB collection holding the urls
+     */
+    public UrlStore(MongoCollection<org.bson.Document> collection) {
+        this(collection, null);
+    }
+
+    /**
+     * Create the store's indexes and migrate any urls still kept in the old array documents.
+     *
+     * @param collection  the MongoDB collection holding the urls
+     * @param writeBuffer the buffer to hold the changes to the urls until they're written in bulk, or null to write
+     *                    each change straight away
+     */
+    public UrlStore(MongoCollection<org.bson.Document> collection, WriteBehindBuffer writeBuffer) {
+        this.collection = collection;
+        this.writeBuffer = writeBuffer;
+        dropLegacyTypeIndex();
+        migrateLegacyDocuments();
+        collection.createIndex(Indexes.ascending(STATE));
+        collection.createIndex(Indexes.ascending(UPDATED_AT));
+    }
+
+    /**
+     * Record an url as waiting to be visited. An url already in the store keeps its state, so a visited url is never
+     * moved back to be visited again.
+     *
+     * @param url the url
+     */
+    public void markToVisit(String url) {
+        if (writeBuffer != null) {
+            writeBuffer.add(collection, url, State.ToVisit.value, null, new org.bson.Document());
+            return;
+        }
+        collection.updateOne(Filters.eq("_id", url), Updates.combine(Updates.setOnInsert(STATE, State.ToVisit.value),
+                stampNow()), new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Record an url as waiting to be visited, along with other fields to keep in its document. An url already in the
+     * store keeps its state, but its fields are updated.
+     *
+     * @param url    the url
+     * @param fields the fields to set on the url's document
+     */
+    public void markToVisit(String url, org.bson.Document fields) {
+        if (writeBuffer != null) {
+            writeBuffer.add(collection, url, State.ToVisit.value, null, fields);
+            return;
+        }
+        List<Bson> updates = new ArrayList<>();
+        updates.add(Updates.setOnInsert(STATE, State.ToVisit.value));
+        fields.forEach((name, value) -> updates.add(Updates.set(name, value)));
+        updates.add(stampNow());
+        collection.updateOne(Filters.eq("_id", url), Updates.combine(updates), new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Record an url as visited.
+     *
+     * @param url the url
+     */
+    public void markVisited(String url) {
+        if (writeBuffer != null) {
+            writeBuffer.add(collection, url, null, State.Visited.value, new org.bson.Document());
+            return;
+        }
+        collection.updateOne(Filters.eq("_id", url),
+                Updates.combine(Updates.set(STATE, State.Visited.value), stampNow()), new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Record an url as visited, along with other fields to keep in its document.
+     *
+     * @param url    the url
+     * @param fields the fields to set on the url's document
+     */
+    public void markVisited(String url, org.bson.Document fields) {
+        if (writeBuffer != null) {
+            writeBuffer.add(collection, url, null, State.Visited.value, fields);
+            return;
+        }
+        collection.updateOne(Filters.eq("_id", url), Updates.combine(setAll(State.Visited, fields)),
+                new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Record an url as waiting to be visited again, even if it was already visited, along with other fields to keep in
+     * its document.
+     *
+     * @param url    the url
+     * @param fields the fields to set on the url's document
+     */
+    public void markToVisitAgain(String url, org.bson.Document fields) {
+        if (writeBuffer != null) {
+            writeBuffer.add(collection, url, null, State.ToVisit.value, fields);
+            return;
+        }
+        collection.updateOne(Filters.eq("_id", url), Updates.combine(setAll(State.ToVisit, fields)),
+                new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Move every visited url back to waiting to be visited. Their other fields are kept.
+     *
+     * @return the number of urls moved
+     */
+    public long markAllVisitedToVisit() {
+        flushWrites();
+        return collection.updateMany(Filters.eq(STATE, State.Visited.value),
+                Updates.combine(Updates.set(STATE, State.ToVisit.value), stampNow())).getModifiedCount();
+    }
+
+    /**
+     * Get the document of an url. Any changes to the url not written yet, even those being written by a flush in
+     * progress, are written first, so the document read reflects every change made to it.
+     *
+     * @param url the url
+     * @return the url's document, or null if the url isn't in the store
+     */
+    public org.bson.Document getDocument(String url) {
+        if (writeBuffer != null && writeBuffer.isPending(collection, url)) {
+            writeBuffer.flush();
+        }
+        return collection.find(Filters.eq("_id", url)).first();
+    }
+
+    /**
+     * Pass each url in the given state to the action, streaming them from the db rather than loading them all at once.
+     *
+     * @param state  the state of the urls wanted
+     * @param action the action to perform on each url
+     */
+    public void forEachUrl(State state, Consumer<String> action) {
+        flushWrites();
+        collection.find(Filters.eq(STATE, state.value))
+                .projection(Projections.include("_id"))
+                .forEach(doc -> action.accept(doc.getString("_id")));
+    }
+
+    /**
+     * Pass the document of each url in the given state to the action, streaming them from the db rather than loading
+     * them all at once. The url is the document's <code>_id</code>.
+     *
+     * @param state  the state of the urls wanted
+     * @param action the action to perform on each url's document
+     */
+    public void forEachDocument(State state, Consumer<org.bson.Document> action) {
+        flushWrites();
+        collection.find(Filters.eq(STATE, state.value)).forEach(action);
+    }
+
+    /**
+     * Pass the document of each url written at or after the given time to the action, whatever its state, streaming
+     * them from the db by the <code>updatedAt</code> index.
+     *
+     * @param sinceMillis the time, in milliseconds since the epoch
+     * @param action      the action to perform on each url's document
+     */
+    public void forEachChangedSince(long sinceMillis, Consumer<org.bson.Document> action) {
+        flushWrites();
+        collection.find(Filters.gte(UPDATED_AT, sinceMillis)).forEach(action);
+    }
+
+    /**
+     * Get the number of urls in the given state
+     *
+     * @param state the state
+     * @return the number of urls in that state
+     */
+    public long count(State state) {
+        flushWrites();
+        return collection.countDocuments(Filters.eq(STATE, state.value));
+    }
+
+    /**
+     * Write any buffered changes, so that what's read from the db is up to date.
+     *
+     * @return <code>true</code> if every change made before this was called is in the db; otherwise <code>false</code>,
+     * and the changes that failed are kept to be retried.
+     */
+    public boolean flushWrites() {
+        return writeBuffer == null || writeBuffer.flush();
+    }
+
+    /**
+     * Get the update that stamps a document with the current time.
+     */
+    static Bson stampNow() {
+        return Updates.set(UPDATED_AT, System.currentTimeMillis());
+    }
+
+    private static List<Bson> setAll(State state, org.bson.Document fields) {
+        List<Bson> updates = new ArrayList<>();
+        updates.add(Updates.set(STATE, state.value));
+        fields.forEach((name, value) -> updates.add(Updates.set(name, value)));
+        updates.add(stampNow());
+        return updates;
+    }
+
+    /**
+     * Drop the unique index on <code>type</code> that the array documents used, as there are now many documents per
+     * state.
+     */
+    private void dropLegacyTypeIndex() {
+        for (org.bson.Document index : collection.listIndexes()) {
+            if (LEGACY_TYPE_INDEX.equals(index.getString("name"))) {
+                try {
+                    collection.dropIndex(LEGACY_TYPE_INDEX);
+                } catch (MongoCommandException e) {
+                    // Already dropped by another process
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Move the urls out of the old <code>{type, urls: [...]}</code> documents into a document each, then delete the old
+     * documents. The to visit urls are moved first so that an url found in both is left as visited. Every step is an
+     * upsert, so a migration that's interrupted part way is simply redone the next time.
+     */
+    private void migrateLegacyDocuments() {
+        for (State state : State.values()) {
+            Bson legacyFilter = Filters.and(Filters.eq(LEGACY_TYPE, state.value), Filters.exists(LEGACY_URLS));
+            org.bson.Document legacy = collection.find(legacyFilter).first();
+            if (legacy == null) {
+                continue;
+            }
+
+            List<WriteModel<org.bson.Document>> batch = new ArrayList<>();
+            for (String url : legacy.getList(LEGACY_URLS, String.class)) {
+                Bson update = state == State.Visited ? Updates.set(STATE, state.value)
+                        : Updates.setOnInsert(STATE, state.value);
+                batch.add(new UpdateOneModel<>(Filters.eq("_id", url), update, new UpdateOptions().upsert(true)));
+                if (batch.size() == MIGRATION_BATCH_SIZE) {
+                    collection.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                collection.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+            }
+            collection.deleteOne(Filters.eq("_id", legacy.get("_id")));
+        }
+    }
+}
@@ -0,0 +1,273 @@
+// 10.15.2026
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archives fetched pages as WARC (ISO 28500) files, so that pages can be scraped again, audited or benchmarked without
+ * going back to their sites. Each fetch is written as a <code>request</code> record followed by its
+ * <code>response</code> record.
+ * <p>
+ * Files are only ever appended to. Every record is compressed as its own gzip member, so a file is a valid
+ * <code>.warc.gz</code> that tools can seek into record by record. Once a file reaches the maximum size a new one is
+ * started. Appends are only forced to disk once every so many records, or by a background thread once every so many
+ * milliseconds while there are appends not yet forced (even if no more fetches come), so a crash loses at most the
+ * records written since the last sync.
+ * <p>
+ * Thread-safe; the records of a fetch are always written next to each other.
+ */
+public class WarcWriter implements AutoCloseable {
+    public static final long DEFAULT_MAX_FILE_BYTES = 1L << 30;  // 1 GB
+    public static final int DEFAULT_SYNC_EVERY_RECORDS = 64;
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 5000;
+
+    private static final String CRLF = "\r\n";
+    private static final DateTimeFormatter FILE_TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+    // The response's body is stored as it was decoded, so the headers describing how it was encoded in transit are
+    // left out
+    private static final List<String> SKIPPED_RESPONSE_HEADERS =
+            List.of("content-encoding", "transfer-encoding", "content-length");
+
+    private final Path directory;
+    private final String prefix;
+    private final long maxFileBytes;
+    private final int syncEveryRecords;
+    private final long syncIntervalMs;
+    private final ScheduledExecutorService syncer;  // forces the appends to disk while no records are being written
+    // The background sync is scheduled by the first fetch written rather than by the constructor, so that it isn't
+    // handed the writer before it's set up
+    private boolean syncScheduled = false;
+
+    private FileChannel file;
+    private int fileSerial = 0;
+    private int numRecordsSinceSync = 0;
+    private long lastSyncTime = System.currentTimeMillis();
+    private long numRecordsWritten = 0;
+    private long numBytesWritten = 0;
+
+    /**
+     * @param directory the directory to write the archive files to, created if it doesn't exist
+     * @param prefix    the start of each archive file's name
+     * @throws IOException if the directory or the first file can't be created
+     */
+    public WarcWriter(Path directory, String prefix) throws IOException {
+        this(directory, prefix, DEFAULT_MAX_FILE_BYTES, DEFAULT_SYNC_EVERY_RECORDS, DEFAULT_SYNC_INTERVAL_MS);
+    }
+
+    /**
+     * @param directory        the directory to write the archive files to, created if it doesn't exist
+     * @param prefix           the start of each archive file's name
+     * @param maxFileBytes     the size after which a new file is started
+     * @param syncEveryRecords the number of records after which the appends are forced to disk
+     * @param syncIntervalMs   the time after which the appends are forced to disk, even if no more records are written
+     * @throws IOException if the directory or the first file can't be created
+     */
+    public WarcWriter(Path directory, String prefix, long maxFileBytes, int syncEveryRecords, long syncIntervalMs)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+        this.maxFileBytes = maxFileBytes;
+        this.syncEveryRecords = syncEveryRecords;
+        this.syncIntervalMs = syncIntervalMs;
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "warc-syncer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        openNextFile();
+    }
+
+    /**
+     * Archive a fetch as a request record and a response record.
+     *
+     * @param targetUrl       the url that was fetched (after any redirects)
+     * @param method          the request's method
+     * @param requestHeaders  the headers the request was sent with
+     * @param statusCode      the response's status code
+     * @param statusMessage   the response's status message
+     * @param responseHeaders the headers of the response
+     * @param body            the response's (decoded) body
+     * @throws IOException if the records can't be written
+     */
+    public void writeFetch(String targetUrl, String method, Map<String, String> requestHeaders, int statusCode,
+                           String statusMessage, Map<String, List<String>> responseHeaders, byte[] body)
+            throws IOException {
+        Instant now = Instant.now();
+        String requestId = newRecordId();
+        String responseId = newRecordId();
+
+        StringBuilder request = new StringBuilder();
+        URI uri = URI.create(targetUrl);
+        String path = (uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath())
+                + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+        request.append(method).append(' ').append(path).append(" HTTP/1.1").append(CRLF);
+        request.append("Host: ").append(uri.getRawAuthority()).append(CRLF);
+        requestHeaders.forEach((name, value) -> request.append(name).append(": ").append(value).append(CRLF));
+        request.append(CRLF);
+
+        StringBuilder responseHead = new StringBuilder();
+        responseHead.append("HTTP/1.1 ").append(statusCode).append(' ').append(statusMessage).append(CRLF);
+        responseHeaders.forEach((name, values) -> {
+            if (!SKIPPED_RESPONSE_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> responseHead.append(name).append(": ").append(value).append(CRLF));
+            }
+        });
+        responseHead.append("Content-Length: ").append(body.length).append(CRLF).append(CRLF);
+
+        byte[] requestRecord = record("request", "application/http;msgtype=request", targetUrl, now, requestId,
+                "WARC-Concurrent-To: " + responseId, request.toString().getBytes(StandardCharsets.ISO_8859_1), null);
+        byte[] responseRecord = record("response", "application/http;msgtype=response", targetUrl, now, responseId,
+                null, responseHead.toString().getBytes(StandardCharsets.ISO_8859_1), body);
+
+        synchronized (this) {
+            if (!syncScheduled) {
+                syncer.scheduleWithFixedDelay(this::syncPending, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+                syncScheduled = true;
+            }
+            append(requestRecord);
+            append(responseRecord);
+            if (numRecordsSinceSync >= syncEveryRecords
+                    || System.currentTimeMillis() - lastSyncTime >= syncIntervalMs) {
+                sync();
+            }
+            if (file.size() >= maxFileBytes) {
+                sync();
+                file.close();
+                openNextFile();
+            }
+        }
+    }
+
+    /**
+     * Get the number of records written to the archive
+     *
+     * @return the number of records written
+     */
+    public synchronized long getNumRecordsWritten() {
+        return numRecordsWritten;
+    }
+
+    /**
+     * Get the number of (compressed) bytes written to the archive
+     *
+     * @return the number of bytes written
+     */
+    public synchronized long getNumBytesWritten() {
+        return numBytesWritten;
+    }
+
+    /**
+     * Force any remaining appends to disk and close the current file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        syncer.shutdownNow();
+        if (file.isOpen()) {
+            sync();
+            file.close();
+        }
+    }
+
+    /**
+     * Start the next archive file, beginning it with a warcinfo record describing the files' creator.
+     */
+    private void openNextFile() throws IOException {
+        Instant now = Instant.now();
+        String name = String.format("%s-%s-%05d.warc.gz", prefix, FILE_TIMESTAMP.format(now), fileSerial++);
+        file = FileChannel.open(directory.resolve(name), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        byte[] info = ("software: crawler-scraper" + CRLF + "format: WARC File Format 1.0" + CRLF)
+                .getBytes(StandardCharsets.UTF_8);
+        append(record("warcinfo", "application/warc-fields", null, now, newRecordId(), "WARC-Filename: " + name,
+                info, null));
+    }
+
+    private void append(byte[] compressedRecord) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(compressedRecord);
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+        numRecordsSinceSync++;
+        numRecordsWritten++;
+        numBytesWritten += compressedRecord.length;
+    }
+
+    private void sync() throws IOException {
+        file.force(false);
+        numRecordsSinceSync = 0;
+        lastSyncTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Force to disk any appends made since the last sync, from the background thread.
+     */
+    private synchronized void syncPending() {
+        if (numRecordsSinceSync == 0 || !file.isOpen()) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            System.out.println("Error syncing the archive - will retry. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Build a record and compress it as a gzip member of its own. The record's block is the head followed by the body,
+     * if there is one.
+     */
+    private static byte[] record(String type, String contentType, String targetUrl, Instant date, String recordId,
+                                 String extraHeader, byte[] blockHead, byte[] blockBody) {
+        int blockLength = blockHead.length + (blockBody != null ? blockBody.length : 0);
+        StringBuilder header = new StringBuilder("WARC/1.0").append(CRLF);
+        header.append("WARC-Type: ").append(type).append(CRLF);
+        header.append("WARC-Record-ID: ").append(recordId).append(CRLF);
+        header.append("WARC-Date: ").append(DateTimeFormatter.ISO_INSTANT.format(date.truncatedTo(ChronoUnit.SECONDS)))
+                .append(CRLF);
+        if (targetUrl != null) {
+            header.append("WARC-Target-URI: ").append(targetUrl).append(CRLF);
+        }
+        if (extraHeader != null) {
+            header.append(extraHeader).append(CRLF);
+        }
+        header.append("Content-Type: ").append(contentType).append(CRLF);
+        header.append("Content-Length: ").append(blockLength).append(CRLF).append(CRLF);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(blockLength / 4 + 256);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+            out.write(blockHead);
+            if (blockBody != null) {
+                out.write(blockBody);
+            }
+            out.write((CRLF + CRLF).getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // can't happen writing to memory
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String newRecordId() {
+        return "<urn:uuid:" + UUID.randomUUID() + ">";
+    }
+}
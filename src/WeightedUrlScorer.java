@@ -0,0 +1,51 @@
+// 10.15.2026
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Scores urls by a weighted sum, starting from the middle priority: each link followed from the start url takes off
+ * the depth weight, each doubling of the pages linking to the url adds the in-link weight, and each pattern found in
+ * the url adds its boost (negative to hold the url back, as for calendars or search results that lead to endless
+ * pages). So pages close to the start url and linked to from many pages are downloaded first.
+ */
+public class WeightedUrlScorer implements UrlScorer {
+    public static final int DEFAULT_DEPTH_WEIGHT = 4;
+    public static final int DEFAULT_IN_LINK_WEIGHT = 2;
+
+    private final int depthWeight;
+    private final int inLinkWeight;
+    private final LinkedHashMap<Pattern, Integer> boosts;
+
+    public WeightedUrlScorer() {
+        this(DEFAULT_DEPTH_WEIGHT, DEFAULT_IN_LINK_WEIGHT, Map.of());
+    }
+
+    /**
+     * @param depthWeight  the priority taken off for each link followed from the start url
+     * @param inLinkWeight the priority added for each doubling of the pages linking to the url
+     * @param boosts       the priority added to an url for each pattern found in it (by <code>Matcher.find</code>),
+     *                     given as regular expressions
+     */
+    public WeightedUrlScorer(int depthWeight, int inLinkWeight, Map<String, Integer> boosts) {
+        this.depthWeight = depthWeight;
+        this.inLinkWeight = inLinkWeight;
+        this.boosts = new LinkedHashMap<>();
+        boosts.forEach((regex, boost) -> this.boosts.put(Pattern.compile(regex), boost));
+    }
+
+    @Override
+    public int score(String url, int depth, int inLinks) {
+        int score = HostScheduler.DEFAULT_PRIORITY - depthWeight * depth;
+        if (inLinks > 1) {
+            score += inLinkWeight * (31 - Integer.numberOfLeadingZeros(inLinks));  // floor(log2(inLinks))
+        }
+        for (Map.Entry<Pattern, Integer> boost : boosts.entrySet()) {
+            if (boost.getKey().matcher(url).find()) {
+                score += boost.getValue();
+            }
+        }
+        return Integer.max(MIN_PRIORITY, Integer.min(score, MAX_PRIORITY));
+    }
+}
@@ -0,0 +1,330 @@
+// 10.15.2026
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import org.bson.conversions.Bson;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds the url state changes of one or more {@link UrlStore}s in memory and writes them to the db in the background,
+ * so that marking an url costs no round trip of its own. Changes to the same url are coalesced into one update, and
+ * all the changes held are written together, as one unordered bulk write per collection, once enough of them build up
+ * or at a fixed interval, whichever comes first.
+ * <p>
+ * <b>Loss window:</b> a crash loses the changes not yet written: at most the maximum number of pending urls, or the
+ * changes of one flush interval. Urls still waiting to be visited are written before urls marked visited, and the
+ * crawler and scraper only mark an url visited after handing on whatever it produced (the downloaded page, or the urls
+ * found on it). So if an url's visited mark made it to the db, so did everything it produced, and after a crash each
+ * url lost is still waiting to be visited: it's visited again, at least once, rather than lost. Sharing one buffer
+ * between the crawler's and the scraper's stores extends this across the two collections.
+ * <p>
+ * A failed write is kept and retried with the next flush, unless the url was changed again since. Thread-safe.
+ */
+public class WriteBehindBuffer implements AutoCloseable {
+    public static final int DEFAULT_MAX_PENDING = 1000;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
+    /**
+     * The coalesced changes to one url's document.
+     */
+    private static final class Change {
+        String stateOnInsert;  // the state to give the url if it's new
+        String state;  // the state to give the url regardless; overrides stateOnInsert
+        final org.bson.Document fields = new org.bson.Document();
+
+        /**
+         * Apply a later change on top of this one.
+         */
+        void merge(Change later) {
+            if (later.state != null) {
+                state = later.state;
+            } else if (state == null && later.stateOnInsert != null) {
+                stateOnInsert = later.stateOnInsert;
+            }
+            fields.putAll(later.fields);
+        }
+
+        String finalState() {
+            return state != null ? state : stateOnInsert;
+        }
+    }
+
+    private final int maxPending;
+    private final String stateField;
+    private final String waitingState;  // changes leaving an url in this state are written first
+    // Per collection, the changes to each url, in the order the urls were first changed
+    private Map<MongoCollection<org.bson.Document>, LinkedHashMap<String, Change>> pending = new LinkedHashMap<>();
+    // The changes taken out of pending by the flush in progress, until it's done with them
+    private Map<MongoCollection<org.bson.Document>, LinkedHashMap<String, Change>> inFlight = Map.of();
+    private int numPending = 0;
+    private final ReentrantLock flushLock = new ReentrantLock();  // one flush at a time, so writes land in order
+    private final ScheduledExecutorService flusher;
+    private final long flushIntervalMs;
+    // The background flush is scheduled by the first change held rather than by the constructor, so that it isn't
+    // handed the buffer before it's set up
+    private boolean flushScheduled = false;
+    private long numFlushes = 0;
+    private long numChangesWritten = 0;
+    private final Metrics.Histogram writeSeconds;  // null if there are no metrics to record
+
+    public WriteBehindBuffer() {
+        this(DEFAULT_MAX_PENDING, DEFAULT_FLUSH_INTERVAL_MS);
+    }
+
+    /**
+     * @param maxPending      the number of urls with pending changes at which they're written, by the thread making the
+     *                        last change
+     * @param flushIntervalMs the time between the background writes of the pending changes
+     */
+    public WriteBehindBuffer(int maxPending, long flushIntervalMs) {
+        this(maxPending, flushIntervalMs, null);
+    }
+
+    /**
+     * @param maxPending      the number of urls with pending changes at which they're written, by the thread making the
+     *                        last change
+     * @param flushIntervalMs the time between the background writes of the pending changes
+     * @param metrics         the metrics to record the time each bulk write takes in, or null to not record it
+     */
+    public WriteBehindBuffer(int maxPending, long flushIntervalMs, Metrics metrics) {
+        this.writeSeconds = metrics != null ? metrics.mongoWriteSeconds() : null;
+        this.maxPending = maxPending;
+        this.stateField = UrlStore.STATE;
+        this.waitingState = UrlStore.State.ToVisit.value;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Hold a change to an url's document. If this brings the number of urls with pending changes up to the maximum,
+     * all the pending changes are written before returning.
+     *
+     * @param collection    the collection of the url's document
+     * @param url           the url
+     * @param stateOnInsert the state to give the url if it isn't in the collection yet, or null
+     * @param state         the state to give the url regardless, or null to leave it
+     * @param fields        other fields to set on the url's document
+     */
+    public void add(MongoCollection<org.bson.Document> collection, String url, String stateOnInsert, String state,
+                    org.bson.Document fields) {
+        Change change = new Change();
+        change.stateOnInsert = stateOnInsert;
+        change.state = state;
+        change.fields.putAll(fields);
+        boolean full;
+        synchronized (this) {
+            if (!flushScheduled && !flusher.isShutdown()) {
+                flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+                flushScheduled = true;
+            }
+            full = merge(collection, url, change) >= maxPending;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Indicate if an url has changes that aren't written yet, including changes being written by a flush in progress.
+     * A {@link #flush()} started after this returns <code>true</code> only returns once they're written.
+     *
+     * @param collection the collection of the url's document
+     * @param url        the url
+     * @return <code>true</code> if the url has pending changes; otherwise <code>false</code>.
+     */
+    public synchronized boolean isPending(MongoCollection<org.bson.Document> collection, String url) {
+        Map<String, Change> changes = pending.get(collection);
+        Map<String, Change> writing = inFlight.get(collection);
+        return changes != null && changes.containsKey(url) || writing != null && writing.containsKey(url);
+    }
+
+    /**
+     * Write all the pending changes: first those leaving urls waiting to be visited, in every collection, then the
+     * rest. Changes that fail to be written are kept to be retried.
+     *
+     * @return <code>true</code> if every change held before this was called is written; otherwise <code>false</code>.
+     */
+    public boolean flush() {
+        flushLock.lock();
+        try {
+            Map<MongoCollection<org.bson.Document>, LinkedHashMap<String, Change>> batch;
+            synchronized (this) {
+                if (numPending == 0) {
+                    return true;
+                }
+                batch = pending;
+                inFlight = batch;
+                pending = new LinkedHashMap<>();
+                numPending = 0;
+            }
+            // If any url left waiting failed to be written, none are marked visited yet, as they may have produced it
+            boolean allWaitingWritten = true;
+            for (MongoCollection<org.bson.Document> collection : batch.keySet()) {
+                allWaitingWritten &= write(collection, batch.get(collection), true);
+            }
+            boolean allWritten = allWaitingWritten;
+            for (MongoCollection<org.bson.Document> collection : batch.keySet()) {
+                if (allWaitingWritten) {
+                    allWritten &= write(collection, batch.get(collection), false);
+                } else {
+                    requeue(collection, batch.get(collection), false);
+                }
+            }
+            // Any changes that failed are back in pending by now
+            synchronized (this) {
+                inFlight = Map.of();
+                numFlushes++;
+            }
+            return allWritten;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of urls with changes that aren't written yet
+     *
+     * @return the number of urls with pending changes
+     */
+    public synchronized int getNumPending() {
+        return numPending;
+    }
+
+    /**
+     * Get the number of (coalesced) url changes written so far
+     *
+     * @return the number of changes written
+     */
+    public synchronized long getNumChangesWritten() {
+        return numChangesWritten;
+    }
+
+    /**
+     * Get the number of times the pending changes were written
+     *
+     * @return the number of flushes
+     */
+    public synchronized long getNumFlushes() {
+        return numFlushes;
+    }
+
+    /**
+     * Stop the background writes and write whatever is still pending.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {  // so that no flush is scheduled once it's shut down
+            flusher.shutdown();
+        }
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Write the changes that leave their url waiting to be visited, or the others.
+     *
+     * @return <code>true</code> if the changes were written; otherwise <code>false</code>, and they're kept to be
+     * retried.
+     */
+    private boolean write(MongoCollection<org.bson.Document> collection, LinkedHashMap<String, Change> changes,
+                          boolean waiting) {
+        List<WriteModel<org.bson.Document>> writes = new ArrayList<>();
+        UpdateOptions options = new UpdateOptions().upsert(true);
+        changes.forEach((url, change) -> {
+            if (isWaiting(change) == waiting) {
+                writes.add(new UpdateOneModel<>(Filters.eq("_id", url), toUpdate(change), options));
+            }
+        });
+        if (writes.isEmpty()) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+            if (writeSeconds != null) {
+                writeSeconds.observeSince(start, collection.getNamespace().getCollectionName());
+            }
+            synchronized (this) {
+                numChangesWritten += writes.size();
+            }
+            return true;
+        } catch (MongoException e) {
+            // Some of the writes may have succeeded, but they're idempotent, so all of them are retried
+            System.out.println("Error writing " + writes.size() + " url changes to the db - will retry. "
+                    + e.getMessage());
+            requeue(collection, changes, waiting);
+            return false;
+        }
+    }
+
+    /**
+     * Put back the changes that leave their url waiting to be visited, or the others, under any made since.
+     */
+    private synchronized void requeue(MongoCollection<org.bson.Document> collection,
+                                      LinkedHashMap<String, Change> changes, boolean waiting) {
+        changes.forEach((url, change) -> {
+            if (isWaiting(change) == waiting) {
+                LinkedHashMap<String, Change> newer = pending.get(collection);
+                Change later = newer != null ? newer.remove(url) : null;
+                if (later != null) {
+                    numPending--;
+                    change.merge(later);
+                }
+                merge(collection, url, change);
+            }
+        });
+    }
+
+    private boolean isWaiting(Change change) {
+        return waitingState.equals(change.finalState());
+    }
+
+    private Bson toUpdate(Change change) {
+        List<Bson> updates = new ArrayList<>();
+        if (change.state != null) {
+            updates.add(Updates.set(stateField, change.state));
+        } else if (change.stateOnInsert != null) {
+            updates.add(Updates.setOnInsert(stateField, change.stateOnInsert));
+        }
+        change.fields.forEach((name, value) -> updates.add(Updates.set(name, value)));
+        // Stamped when written rather than when the change was made, so a change is never stamped before it reached
+        // the db
+        updates.add(UrlStore.stampNow());
+        return Updates.combine(updates);
+    }
+
+    /**
+     * Merge a change into the pending ones. Must hold the buffer's lock.
+     *
+     * @return the number of urls with pending changes
+     */
+    private int merge(MongoCollection<org.bson.Document> collection, String url, Change change) {
+        LinkedHashMap<String, Change> changes = pending.computeIfAbsent(collection, c -> new LinkedHashMap<>());
+        Change existing = changes.get(url);
+        if (existing == null) {
+            changes.put(url, change);
+            numPending++;
+        } else {
+            existing.merge(change);
+        }
+        return numPending;
+    }
+}
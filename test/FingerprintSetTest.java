@@ -0,0 +1,98 @@
+// 10.15.2026
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link FingerprintSet} against a <code>HashSet</code> of the same fingerprints.
+ */
+class FingerprintSetTest {
+
+    /**
+     * Add random fingerprints to the set, well past its initial capacity, along with 0 (which it keeps aside).
+     *
+     * @return the fingerprints added
+     */
+    private static Set<Long> fill(FingerprintSet set, int count) {
+        Set<Long> added = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            long fingerprint = i == 0 ? 0 : random.nextLong();
+            assertEquals(added.add(fingerprint), set.add(fingerprint));
+        }
+        return added;
+    }
+
+    @Test
+    void addsEachFingerprintOnce() {
+        FingerprintSet set = new FingerprintSet();
+        assertTrue(set.add(7));
+        assertFalse(set.add(7));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(7));
+        assertTrue(set.contains(0));
+        assertFalse(set.contains(8));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    void growsWithoutLosingFingerprints() {
+        FingerprintSet set = new FingerprintSet();
+        Set<Long> added = fill(set, 20_000);
+        assertEquals(added.size(), set.size());
+        for (long fingerprint : added) {
+            assertTrue(set.contains(fingerprint));
+            assertFalse(set.add(fingerprint));
+        }
+        assertFalse(set.contains(12345));
+    }
+
+    @Test
+    void copyIsIndependent() {
+        FingerprintSet set = new FingerprintSet();
+        Set<Long> added = fill(set, 1000);
+        FingerprintSet copy = set.copy();
+        assertTrue(set.add(-1));
+        assertFalse(copy.contains(-1));
+        assertEquals(added.size(), copy.size());
+        for (long fingerprint : added) {
+            assertTrue(copy.contains(fingerprint));
+        }
+    }
+
+    @Test
+    void readsBackWhatItWrote() throws IOException {
+        FingerprintSet set = new FingerprintSet();
+        Set<Long> added = fill(set, 5000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            set.writeTo(out);
+            out.writeInt(99);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        FingerprintSet read = FingerprintSet.readFrom(buffer);
+        assertEquals(99, buffer.getInt());  // left positioned after the set
+        assertEquals(added.size(), read.size());
+        for (long fingerprint : added) {
+            assertTrue(read.contains(fingerprint));
+        }
+        assertTrue(read.add(-1));
+    }
+
+    @Test
+    void rejectsInvalidTable() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put((byte) 0).putInt(10).putInt(12).flip();  // 12 slots isn't a power of two
+        assertThrows(IOException.class, () -> FingerprintSet.readFrom(buffer));
+    }
+}
@@ -0,0 +1,131 @@
+// 10.15.2026
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the order {@link HostScheduler} hands urls out in. The schedulers have no politeness delay unless a test is
+ * about the delay, so a host is ready again as soon as its download completes.
+ */
+class HostSchedulerTest {
+
+    /**
+     * Poll every url, completing each download straight away, and get the order they were handed out in.
+     */
+    private static List<String> drain(HostScheduler scheduler) throws InterruptedException {
+        List<String> order = new ArrayList<>();
+        while (!scheduler.isIdle()) {
+            String url = scheduler.poll();
+            if (url == null) {
+                scheduler.awaitReady(10);
+                continue;
+            }
+            order.add(url);
+            scheduler.complete(url, 0);
+        }
+        return order;
+    }
+
+    @Test
+    void readyHostWithBestUrlGoesFirst() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0);
+        scheduler.add("http://a.com/1", 10);
+        scheduler.add("http://b.com/1", 50);
+        scheduler.add("http://c.com/1", 30);
+        assertEquals(List.of("http://b.com/1", "http://c.com/1", "http://a.com/1"), drain(scheduler));
+    }
+
+    @Test
+    void hostHandsOutUrlsHighestPriorityFirstThenInOrderQueued() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0);
+        scheduler.add("http://a.com/1", 10);
+        scheduler.add("http://a.com/2", 40);
+        scheduler.add("http://a.com/3", 10);
+        scheduler.add("http://a.com/4", 40);
+        assertEquals(List.of("http://a.com/2", "http://a.com/4", "http://a.com/1", "http://a.com/3"), drain(scheduler));
+    }
+
+    @Test
+    void prioritiesUseAllBucketsAndOutOfRangeAreClamped() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0);
+        scheduler.add("http://a.com/low", -5);
+        scheduler.add("http://a.com/zero", 0);
+        scheduler.add("http://a.com/top", HostScheduler.NUM_PRIORITIES - 1);
+        scheduler.add("http://a.com/high", 1000);
+        scheduler.add("http://a.com/default");
+        assertEquals(List.of("http://a.com/top", "http://a.com/high", "http://a.com/default", "http://a.com/low",
+                "http://a.com/zero"), drain(scheduler));
+    }
+
+    @Test
+    void raisedUrlMovesUpAndItsOldPlaceIsSkipped() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0);
+        for (int i = 0; i < 5; i++) {
+            scheduler.add("http://a.com/" + i);
+        }
+        assertTrue(scheduler.raise("http://a.com/3", 60));
+        assertEquals(5, scheduler.size());
+        assertEquals(List.of("http://a.com/3", "http://a.com/0", "http://a.com/1", "http://a.com/2", "http://a.com/4"),
+                drain(scheduler));
+        assertEquals(0, scheduler.size());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    void raisedUrlMovesItsReadyHostAheadOfOthers() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0);
+        scheduler.add("http://c.com/1", 40);
+        scheduler.add("http://a.com/1", 10);
+        scheduler.add("http://a.com/2", 10);
+        scheduler.add("http://b.com/1", 20);
+        // Polling files the other hosts as ready, so a.com is raised from its place among them
+        String first = scheduler.poll();
+        assertEquals("http://c.com/1", first);
+        scheduler.complete(first, 0);
+        scheduler.raise("http://a.com/2", 30);
+        assertEquals(List.of("http://a.com/2", "http://b.com/1", "http://a.com/1"), drain(scheduler));
+    }
+
+    @Test
+    void urlIsNeverLoweredOrQueuedTwice() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0);
+        scheduler.add("http://a.com/1", 30);
+        scheduler.add("http://a.com/2", 20);
+        scheduler.add("http://a.com/1", 5);
+        assertFalse(scheduler.raise("http://a.com/3", 40));
+        assertEquals(2, scheduler.size());
+        assertEquals(List.of("http://a.com/1", "http://a.com/2"), drain(scheduler));
+    }
+
+    @Test
+    void urlCanBeQueuedAgainOnceHandedOut() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0);
+        scheduler.add("http://a.com/1");
+        scheduler.add("http://a.com/2");
+        String first = scheduler.poll();
+        assertEquals("http://a.com/1", first);
+        scheduler.complete(first, 0);
+        scheduler.add(first, HostScheduler.NUM_PRIORITIES - 1);
+        assertEquals(List.of("http://a.com/1", "http://a.com/2"), drain(scheduler));
+    }
+
+    @Test
+    void hostWaitsForItsDownloadAndPolitenessDelay() {
+        HostScheduler scheduler = new HostScheduler(60_000);
+        scheduler.add("http://a.com/1");
+        scheduler.add("http://a.com/2");
+        scheduler.add("http://b.com/1");
+        assertEquals("http://a.com/1", scheduler.poll());
+        assertEquals("http://b.com/1", scheduler.poll());
+        assertNull(scheduler.poll());  // a.com is still downloading
+        assertEquals(Long.MAX_VALUE, scheduler.getDelayUntilNextReadyMs());
+        scheduler.complete("http://a.com/1", 10);
+        assertNull(scheduler.poll());
+        assertTrue(scheduler.getDelayUntilNextReadyMs() > 50_000);
+        assertFalse(scheduler.isIdle());
+    }
+}
@@ -0,0 +1,54 @@
+// 10.15.2026
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link PageStore} keeps a body only while some page holds it.
+ */
+class PageStoreTest {
+    private static final byte[] BODY = "<html><body>the same page</body></html>".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackBodyStoredUnderItsHash() throws IOException {
+        PageStore store = new PageStore(directory);
+        String hash = store.put(BODY);
+        assertEquals(PageStore.hashOf(BODY), hash);
+        try (InputStream in = store.open(hash)) {
+            assertArrayEquals(BODY, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void keepsSharedBodyUntilLastPageReleasesIt() throws IOException {
+        PageStore store = new PageStore(directory);
+        String hash = store.put(BODY);
+        assertEquals(hash, store.put(BODY));
+        store.release(hash);
+        assertTrue(store.contains(hash));
+        store.release(hash);
+        assertFalse(store.contains(hash));
+        store.release(hash);  // a reference too many is ignored
+    }
+
+    @Test
+    void keepsReloadedBodyUntilReleased() throws IOException {
+        String hash = new PageStore(directory).put(BODY);
+        PageStore restarted = new PageStore(directory);
+        restarted.release(hash);  // not reloaded yet, so not held
+        assertTrue(restarted.contains(hash));
+        restarted.retain(hash);
+        restarted.release(hash);
+        assertFalse(restarted.contains(hash));
+    }
+}
@@ -0,0 +1,102 @@
+// 10.15.2026
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests each of {@link UrlCanonicalizer}'s rules, for a site served from <code>https://www.example.com</code>.
+ */
+class UrlCanonicalizerTest {
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer("https://www.example.com/");
+
+    @Test
+    void dropsFragment() {
+        assertEquals("https://www.example.com/a", canonicalizer.canonicalize("https://www.example.com/a#top"));
+    }
+
+    @Test
+    void lowerCasesSchemeAndHostButNotPath() {
+        assertEquals("https://www.example.com/A/b", canonicalizer.canonicalize("HTTPS://WWW.Example.COM/A/b"));
+        assertEquals("https://www.example.com/", canonicalizer.canonicalize("https://www.example.com"));
+    }
+
+    @Test
+    void dropsDefaultPort() {
+        assertEquals("https://www.example.com/a", canonicalizer.canonicalize("https://www.example.com:443/a"));
+        assertEquals("http://other.org/a", canonicalizer.canonicalize("http://other.org:80/a"));
+        assertEquals("https://www.example.com:8443/a", canonicalizer.canonicalize("https://www.example.com:8443/a"));
+    }
+
+    @Test
+    void movesSiteToHttpsAndLeavesOtherHosts() {
+        assertEquals("https://www.example.com/a", canonicalizer.canonicalize("http://www.example.com/a"));
+        assertEquals("http://other.org/a", canonicalizer.canonicalize("http://other.org/a"));
+    }
+
+    @Test
+    void givesSiteHostItsWwwForm() {
+        assertEquals("https://www.example.com/a", canonicalizer.canonicalize("https://example.com/a"));
+        assertEquals("https://www.example.com/a", canonicalizer.canonicalize("http://EXAMPLE.com/a"));
+        assertEquals("https://example.com/a",
+                new UrlCanonicalizer("https://example.com").canonicalize("https://www.example.com/a"));
+    }
+
+    @Test
+    void normalizesPercentEncoding() {
+        assertEquals("https://www.example.com/~user/a%2Fb?q=%3F",
+                canonicalizer.canonicalize("https://www.example.com/%7euser/a%2fb?q=%3f"));
+    }
+
+    @Test
+    void resolvesDotSegments() {
+        assertEquals("https://www.example.com/a/c/d",
+                canonicalizer.canonicalize("https://www.example.com/a/b/../c/./d"));
+        assertEquals("https://www.example.com/a/", canonicalizer.canonicalize("https://www.example.com/a/b/.."));
+        assertEquals("https://www.example.com/a", canonicalizer.canonicalize("https://www.example.com/../../a"));
+    }
+
+    @Test
+    void dropsIndexPageButKeepsSlash() {
+        assertEquals("https://www.example.com/dir/",
+                canonicalizer.canonicalize("https://www.example.com/dir/index.html"));
+        assertEquals("https://www.example.com/", canonicalizer.canonicalize("https://www.example.com/Default.aspx"));
+        assertEquals("https://www.example.com/dir/indexes.html",
+                canonicalizer.canonicalize("https://www.example.com/dir/indexes.html"));
+    }
+
+    @Test
+    void keepsTrailingSlashAsItIs() {
+        assertEquals("https://www.example.com/dir/", canonicalizer.canonicalize("https://www.example.com/dir/"));
+        assertEquals("https://www.example.com/dir", canonicalizer.canonicalize("https://www.example.com/dir"));
+    }
+
+    @Test
+    void dropsTrackingParameters() {
+        assertEquals("https://www.example.com/a?id=3",
+                canonicalizer.canonicalize("https://www.example.com/a?utm_source=x&id=3&FBCLID=y"));
+        assertEquals("https://www.example.com/a", canonicalizer.canonicalize("https://www.example.com/a?utm_medium=x"));
+    }
+
+    @Test
+    void leavesUrlsWithoutSchemeAndHostAlone() {
+        assertEquals("/relative/INDEX.html#x", canonicalizer.canonicalize("/relative/INDEX.html#x"));
+        assertEquals("mailto:someone@example.com", canonicalizer.canonicalize("mailto:someone@example.com"));
+        assertEquals("file:///a/../b", canonicalizer.canonicalize("file:///a/../b"));
+    }
+
+    @Test
+    void appliesOnlyRulesTurnedOnAndCountsEach() {
+        UrlCanonicalizer fragmentsOnly = new UrlCanonicalizer("https://www.example.com/",
+                EnumSet.of(UrlCanonicalizer.Rule.FRAGMENT), null);
+        assertEquals("http://Example.com:80/a/../index.html?utm_source=x",
+                fragmentsOnly.canonicalize("http://Example.com:80/a/../index.html?utm_source=x#top"));
+        Map<UrlCanonicalizer.Rule, Long> hits = fragmentsOnly.getHits();
+        assertEquals(1, hits.get(UrlCanonicalizer.Rule.FRAGMENT));
+        assertEquals(0, hits.get(UrlCanonicalizer.Rule.CASE));
+        assertEquals(UrlCanonicalizer.Rule.values().length, hits.size());
+    }
+}
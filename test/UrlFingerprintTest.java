@@ -0,0 +1,33 @@
+// 10.15.2026
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks {@link UrlFingerprint} against the first 64 bits of the reference MurmurHash3_x64_128 (seed 0), for inputs
+ * covering an empty input, a tail alone, and whole 16-byte blocks followed by a tail of each half.
+ */
+class UrlFingerprintTest {
+
+    @Test
+    void matchesReferenceMurmur3Vectors() {
+        assertEquals(0L, UrlFingerprint.of(""));
+        assertEquals(0x629942693e10f867L, UrlFingerprint.of("hell"));
+        assertEquals(0xcbd8a7b341bd9b02L, UrlFingerprint.of("hello"));
+        assertEquals(0xe34bbc7bbc071b6cL, UrlFingerprint.of("The quick brown fox jumps over the lazy dog"));
+        assertEquals(0x658ca970ff85269aL, UrlFingerprint.of("The quick brown fox jumps over the lazy cog"));
+    }
+
+    @Test
+    void hashesUtf8Bytes() {
+        assertNotEquals(UrlFingerprint.of("https://example.com/café"), UrlFingerprint.of("https://example.com/cafe"));
+        assertEquals(UrlFingerprint.of("https://example.com/café"), UrlFingerprint.of("https://example.com/café"));
+    }
+
+    @Test
+    void estimatesCollisions() {
+        assertEquals(0, UrlFingerprint.expectedFalseDrops(1));
+        assertEquals(1_000_000.0 * 999_999 / 0x1p65, UrlFingerprint.expectedFalseDrops(1_000_000));
+    }
+}